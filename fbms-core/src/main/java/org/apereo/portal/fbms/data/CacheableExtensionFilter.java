@@ -0,0 +1,51 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * An {@link ExtensionFilter} whose output on <code>GET</code> requests may be reused.  Suitable for
+ * filters that enrich the entity returned by the rest of the chain with data that changes rarely
+ * (e.g. defaults derived from the user's groups).
+ *
+ * <p>The {@link ExtensionFilterChainBuilder} invokes the filter in its usual place in the chain.
+ * When the filter invokes the rest of the chain, the builder asks it for a cache key for the entity
+ * the rest of the chain returned.  If the filter has returned an entity for an equal key (and the
+ * same fname, entity identifier, which includes the form version, and entity content) before, the
+ * invocation of the rest of the chain throws an exception that unwinds the filter, and a copy of
+ * that earlier entity is returned in its place.  Such filters must therefore do their expensive work
+ * after invoking the rest of the chain, must not catch exceptions it throws, and their output must
+ * depend only on the entity it returns and the inputs represented in the key.  Cached results for
+ * older versions of a form are discarded when a new version is saved.
+ *
+ * <p>Results are cached for {@link FormEntity} and {@link SubmissionEntity} only.
+ */
+public interface CacheableExtensionFilter<E extends FbmsEntity> extends ExtensionFilter<E> {
+
+    /**
+     * Identifies the inputs (other than the entity) on which the output of this filter depends,
+     * e.g. the user's groups.  The key must implement <code>equals</code> and <code>hashCode</code>.
+     * Returns <code>null</code> if the output should not be cached for this request.
+     *
+     * @param entity The entity returned by the rest of the chain (never <code>null</code>)
+     */
+    Object getCacheKey(ExtensionFilterChainMetadata metadata, E entity, HttpServletRequest request);
+
+}
@@ -45,10 +45,32 @@ public interface ExtensionFilter<E extends FbmsEntity> extends Ordered {
     int ORDER_VERY_LATE = -100;
     int ORDER_LATEST = -1000;
 
+    /**
+     * Declares the operations to which this filter may apply, in terms that do not vary from one
+     * request to the next.  The default is {@link ExtensionFilterApplicability#ANY}, under which
+     * {@link #appliesTo(ExtensionFilterChainMetadata, FbmsEntity, HttpServletRequest)} decides on
+     * every request.  Invoked once per combination of entity class, HTTP method, and fname;  the
+     * result must not change.
+     */
+    default ExtensionFilterApplicability getApplicability() {
+        return ExtensionFilterApplicability.ANY;
+    }
+
+    /**
+     * Declares a circuit breaker and failure policy for this filter (see {@link ExtensionFilterPolicy}).
+     * The default is {@link ExtensionFilterPolicy#UNGUARDED}.  Filters that call other systems
+     * should declare a policy so that an outage in one of them cannot stall every request.
+     */
+    default ExtensionFilterPolicy getPolicy() {
+        return ExtensionFilterPolicy.UNGUARDED;
+    }
+
     /**
      * This method allows {@link ExtensionFilter} to indicate whether they apply to the specified
      * request and/or entity.  The decision can be based on HTTP method, URI, the user who sent it,
-     * etc.  Filters that do not apply are not included in the filter chain.
+     * etc.  Filters that do not apply are not included in the filter chain.  Filters that declare
+     * their applicability statically (see {@link #getApplicability()}) and are not dynamic are not
+     * asked.
      */
     boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request);
 
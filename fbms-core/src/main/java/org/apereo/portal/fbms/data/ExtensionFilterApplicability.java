@@ -0,0 +1,157 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Describes the operations to which an {@link ExtensionFilter} applies in terms that do not vary
+ * from one request to the next:  the entity class, the HTTP method, and the fname.  The
+ * {@link ExtensionFilterChainBuilder} uses these declarations to precompile (and cache) the
+ * candidate filters for each combination, so that per-request work is limited to the filters that
+ * also need a dynamic check (see {@link #isDynamic()}).
+ *
+ * <p>An empty set means "any".  HTTP methods and fnames are compared ignoring case.
+ */
+public final class ExtensionFilterApplicability {
+
+    /**
+     * Applies to every operation, subject to <code>appliesTo</code> on each request.  The default
+     * for filters that do not declare their applicability.
+     */
+    public static final ExtensionFilterApplicability ANY = builder().dynamic().build();
+
+    /**
+     * Applies to no operation (e.g. for filters that are disabled by configuration).
+     */
+    public static final ExtensionFilterApplicability NONE = new ExtensionFilterApplicability(
+            Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), false, true);
+
+    private final Set<Class<? extends FbmsEntity>> entityClasses;
+    private final Set<String> methods;
+    private final Set<String> fnames;
+    private final boolean dynamic;
+    private final boolean never;
+
+    private ExtensionFilterApplicability(Set<Class<? extends FbmsEntity>> entityClasses, Set<String> methods,
+            Set<String> fnames, boolean dynamic, boolean never) {
+        this.entityClasses = entityClasses;
+        this.methods = methods;
+        this.fnames = fnames;
+        this.dynamic = dynamic;
+        this.never = never;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Indicates whether <code>appliesTo</code> must also be invoked on each request for operations
+     * that match the static declarations.
+     */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * Evaluates the static declarations.  The <code>method</code> and <code>fname</code> may be
+     * <code>null</code>.
+     */
+    public boolean matches(Class<? extends FbmsEntity> entityClass, String method, String fname) {
+        if (never) {
+            return false;
+        }
+        return (entityClasses.isEmpty() || entityClasses.contains(entityClass))
+                && (methods.isEmpty() || (method != null && methods.contains(method.toUpperCase(Locale.ROOT))))
+                && (fnames.isEmpty() || (fname != null && fnames.contains(fname.toLowerCase(Locale.ROOT))));
+    }
+
+    @Override
+    public String toString() {
+        if (never) {
+            return "ExtensionFilterApplicability{NONE}";
+        }
+        return "ExtensionFilterApplicability{" +
+                "entityClasses=" + entityClasses.stream().map(Class::getSimpleName).collect(Collectors.toList()) +
+                ", methods=" + methods +
+                ", fnames=" + fnames +
+                ", dynamic=" + dynamic +
+                '}';
+    }
+
+    /*
+     * Nested Types
+     */
+
+    public static final class Builder {
+
+        private final Set<Class<? extends FbmsEntity>> entityClasses = new HashSet<>();
+        private final Set<String> methods = new HashSet<>();
+        private final Set<String> fnames = new HashSet<>();
+        private boolean dynamic = false;
+
+        private Builder() {}
+
+        @SafeVarargs
+        public final Builder entityClasses(Class<? extends FbmsEntity>... entityClasses) {
+            this.entityClasses.addAll(Arrays.asList(entityClasses));
+            return this;
+        }
+
+        public Builder methods(String... methods) {
+            for (String method : methods) {
+                this.methods.add(method.toUpperCase(Locale.ROOT));
+            }
+            return this;
+        }
+
+        public Builder fnames(String... fnames) {
+            for (String fname : fnames) {
+                this.fnames.add(fname.toLowerCase(Locale.ROOT));
+            }
+            return this;
+        }
+
+        /**
+         * Indicates that <code>appliesTo</code> must be invoked on each request as well (e.g. because
+         * applicability depends on the user or the entity).
+         */
+        public Builder dynamic() {
+            this.dynamic = true;
+            return this;
+        }
+
+        public ExtensionFilterApplicability build() {
+            return new ExtensionFilterApplicability(
+                    Collections.unmodifiableSet(new HashSet<>(entityClasses)),
+                    Collections.unmodifiableSet(new HashSet<>(methods)),
+                    Collections.unmodifiableSet(new HashSet<>(fnames)),
+                    dynamic,
+                    false);
+        }
+
+    }
+
+}
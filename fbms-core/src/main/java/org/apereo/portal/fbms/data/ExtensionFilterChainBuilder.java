@@ -18,29 +18,109 @@
  */
 package org.apereo.portal.fbms.data;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.util.BoundedCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
+/**
+ * Builds the chain of {@link ExtensionFilter} objects that surrounds a repository operation.
+ *
+ * <p>The filters that may apply to an operation are determined once per route (entity class, HTTP
+ * method, and fname) from their static declarations (see
+ * {@link ExtensionFilter#getApplicability()}) and cached.  On each request, only the candidates that
+ * declare a dynamic check are asked whether they apply.
+ *
+ * <p>When a <code>MeterRegistry</code> is available, each filter in each chain is timed (see
+ * {@link ExtensionFilterMetrics}).  Filters that declare a guarded {@link ExtensionFilterPolicy} are
+ * invoked through a circuit breaker (one per filter).
+ *
+ * <p>On <code>GET</code> requests, the output of each {@link CacheableExtensionFilter} is kept in a
+ * bounded cache and reused for subsequent requests with the same cache key.
+ */
 @Component
 public class ExtensionFilterChainBuilder {
 
+    private static final String CACHE_NAME = "extensionFilterChains";
+
+    /**
+     * Upper bound on the number of routes for which candidate filters are cached.  Routes include
+     * the fname from the URI, which the client controls.
+     */
+    private static final int MAXIMUM_CACHED_ROUTES = 2000;
+
+    private static final String RESULTS_CACHE_NAME = "extensionFilterResults";
+
     private List<ExtensionFilter> filters;
 
+    private PostCommitFilterExecutor postCommitFilterExecutor;
+
+    /**
+     * Dispatches post-commit filters for submissions itself (once written) when write-behind is
+     * enabled.
+     */
+    @Autowired(required = false)
+    private SubmissionWriter submissionWriter;
+
+    @Value("${org.apereo.portal.fbms.filters.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    /**
+     * Approximate upper bound on the JSON (in characters) of all cached filter results.
+     */
+    @Value("${org.apereo.portal.fbms.cache.filterResults.maximumWeight:20000000}")
+    private long resultsMaximumWeight;
+
+    @Value("${org.apereo.portal.fbms.cache.filterResults.timeToLiveSeconds:300}")
+    private long resultsTimeToLiveSeconds;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ExtensionFilterMetrics metrics;
+
+    /**
+     * Outputs of {@link CacheableExtensionFilter} beans;  <code>null</code> until initialized.
+     */
+    private BoundedCache<ResultKey,FbmsEntity> results;
+
+    private final BoundedCache<Route,List<Candidate>> candidates =
+            new BoundedCache<>(CACHE_NAME, MAXIMUM_CACHED_ROUTES, 0L);
+
+    private final Map<ExtensionFilter,ExtensionFilterCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Autowired(required = false)
     public void setFilters(List<ExtensionFilter> filters) {
         this.filters = filters;
+        candidates.invalidateAll();
+        breakers.clear();
+        if (results != null) {
+            results.invalidateAll();
+        }
+    }
+
+    @Autowired(required = false)
+    public void setPostCommitFilterExecutor(PostCommitFilterExecutor postCommitFilterExecutor) {
+        this.postCommitFilterExecutor = postCommitFilterExecutor;
     }
 
     @PostConstruct
@@ -52,6 +132,27 @@ public class ExtensionFilterChainBuilder {
         if (filters == null) {
             filters = Collections.emptyList();
         }
+
+        initResults(resultsMaximumWeight, TimeUnit.SECONDS.toMillis(resultsTimeToLiveSeconds));
+
+        if (meterRegistry != null) {
+            candidates.bindTo(meterRegistry);
+            results.bindTo(meterRegistry);
+            if (metricsEnabled) {
+                metrics = new ExtensionFilterMetrics(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Selects the filters that apply to the specified operation.  Callers may use the result to
+     * skip work that is only necessary when filters are present (e.g. copying shared objects), then
+     * pass it to {@link #fromSupplier(ApplicableFilters, HttpServletRequest, HttpServletResponse, Supplier)}
+     * so that dynamic checks are not evaluated again.
+     */
+    public ApplicableFilters getApplicableFilters(ExtensionFilterChainMetadata metadata, FbmsEntity entity,
+            HttpServletRequest request) {
+        return new ApplicableFilters(metadata, selectCandidates(metadata, entity, request));
     }
 
     /**
@@ -59,64 +160,58 @@ public class ExtensionFilterChainBuilder {
      */
     public <E extends FbmsEntity> Supplier<E> fromSupplier(ExtensionFilterChainMetadata metadata,
             HttpServletRequest request, HttpServletResponse response, final Supplier<E> callback) {
+        return fromSupplier(getApplicableFilters(metadata, null, request), request, response, callback);
+    }
 
-        /*
-         * Wrap the callback in a FbmsFilterChain at the center of the "onion."
-         */
-        ExtensionFilterChain<E> chain = entity1 -> callback.get();
+    /**
+     * Builds a filter chain based on a <code>Supplier</code> from filters selected previously (for
+     * the same request).
+     */
+    public <E extends FbmsEntity> Supplier<E> fromSupplier(ApplicableFilters applicable,
+            HttpServletRequest request, HttpServletResponse response, final Supplier<E> callback) {
 
         /*
-         * Add layers of the onion
+         * Wrap the callback in a FbmsFilterChain at the center of the "onion," and add the layers
          */
-        for (ExtensionFilter filter : filters) {
-            final boolean applies = filter.appliesTo(metadata, null, request);
-            logger.debug("FbmsFilter bean {} {} apply to request with URI='{}' and method='{}'",
-                    filter,
-                    applies ? "DOES" : "DOES NOT",
-                    request.getRequestURI(),
-                    request.getMethod());
-            if (applies) {
-                chain = new ExtensionFilterChainImpl(metadata, filter, request, response, chain);
-            }
-        }
+        final ExtensionFilterChain<E> rslt = buildChain(applicable.metadata, applicable.candidates,
+                request, response, entity1 -> callback.get());
 
         /*
          * Decorate the whole business in a Supplier
          */
-        final ExtensionFilterChain<E> rslt = chain;
         return () -> rslt.doFilter(null);
 
     }
 
+    /**
+     * Builds a filter chain based on a <code>UnaryOperator</code>.  When the chain completes
+     * normally, {@link PostCommitExtensionFilter} beans are dispatched with the entity it returns
+     * (unless it is a submission queued by the {@link SubmissionWriter}, which dispatches them once
+     * the submission has been written), and cached filter results for older versions of a form it returns are discarded.
+     */
     public <E extends FbmsEntity> Supplier<E> fromUnaryOperator(ExtensionFilterChainMetadata metadata,
             E entity, HttpServletRequest request, HttpServletResponse response, final UnaryOperator<E> callback) {
 
         /*
-         * Wrap the callback in a FbmsFilterChain at the center of the "onion."
+         * Wrap the callback in a FbmsFilterChain at the center of the "onion," and add the layers
          */
-        ExtensionFilterChain<E> chain = entity1 -> callback.apply(entity);
-
-        /*
-         * Add layers of the onion
-         */
-        for (ExtensionFilter filter : filters) {
-            final boolean applies = filter.appliesTo(metadata, entity, request);
-            logger.debug("FbmsFilter bean {} {} apply to request with URI='{}', method='{}', and entity='{}'",
-                    filter,
-                    applies ? "DOES" : "DOES NOT",
-                    request.getRequestURI(),
-                    request.getMethod(),
-                    entity);
-            if (applies) {
-                chain = new ExtensionFilterChainImpl(metadata, filter, request, response, chain);
-            }
-        }
+        final ExtensionFilterChain<E> rslt =
+                buildChain(metadata, selectCandidates(metadata, entity, request), request, response,
+                        entity1 -> callback.apply(entity));
 
         /*
          * Decorate the whole business in a Supplier
          */
-        final ExtensionFilterChain<E> rslt = chain;
-        return () -> rslt.doFilter(entity);
+        return () -> {
+            final E saved = rslt.doFilter(entity);
+            if (saved instanceof FormEntity) {
+                evictResults(((FormEntity) saved).getId());
+            }
+            if (postCommitFilterExecutor != null && !isWrittenBehind(saved)) {
+                postCommitFilterExecutor.dispatch(metadata, saved, request);
+            }
+            return saved;
+        };
 
     }
 
@@ -124,6 +219,154 @@ public class ExtensionFilterChainBuilder {
      * Nested Types
      */
 
+    /**
+     * The filters that apply to one operation;  see
+     * {@link #getApplicableFilters(ExtensionFilterChainMetadata, FbmsEntity, HttpServletRequest)}.
+     */
+    public static final class ApplicableFilters {
+
+        private final ExtensionFilterChainMetadata metadata;
+        private final List<Candidate> candidates;
+
+        private ApplicableFilters(ExtensionFilterChainMetadata metadata, List<Candidate> candidates) {
+            this.metadata = metadata;
+            this.candidates = candidates;
+        }
+
+        public ExtensionFilterChainMetadata getMetadata() {
+            return metadata;
+        }
+
+        public boolean isEmpty() {
+            return candidates.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "ApplicableFilters{" +
+                    "metadata=" + metadata +
+                    ", candidates=" + candidates +
+                    '}';
+        }
+
+    }
+
+    private static final class Route {
+
+        private final Class<? extends FbmsEntity> entityClass;
+        private final String method;
+        private final String fname;
+
+        private Route(Class<? extends FbmsEntity> entityClass, String method, String fname) {
+            this.entityClass = entityClass;
+            this.method = method;
+            this.fname = fname;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Route route = (Route) o;
+            return Objects.equals(entityClass, route.entityClass) &&
+                    Objects.equals(method, route.method) &&
+                    Objects.equals(fname, route.fname);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityClass, method, fname);
+        }
+
+        @Override
+        public String toString() {
+            return "Route{" +
+                    "entityClass=" + (entityClass != null ? entityClass.getSimpleName() : null) +
+                    ", method='" + method + '\'' +
+                    ", fname='" + fname + '\'' +
+                    '}';
+        }
+
+    }
+
+    /**
+     * Identifies the output of a {@link CacheableExtensionFilter} for one entity.
+     */
+    private static final class ResultKey {
+
+        private final ExtensionFilter filter;
+        private final Class<? extends FbmsEntity> entityClass;
+        private final String fname;
+        private final Object entityId;
+        private final String contentDigest;
+        private final Object filterKey;
+
+        private ResultKey(ExtensionFilter filter, Class<? extends FbmsEntity> entityClass, String fname,
+                Object entityId, String contentDigest, Object filterKey) {
+            this.filter = filter;
+            this.entityClass = entityClass;
+            this.fname = fname;
+            this.entityId = entityId;
+            this.contentDigest = contentDigest;
+            this.filterKey = filterKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ResultKey that = (ResultKey) o;
+            return filter == that.filter &&
+                    Objects.equals(entityClass, that.entityClass) &&
+                    Objects.equals(fname, that.fname) &&
+                    Objects.equals(entityId, that.entityId) &&
+                    Objects.equals(contentDigest, that.contentDigest) &&
+                    Objects.equals(filterKey, that.filterKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(filter), entityClass, fname, entityId, contentDigest, filterKey);
+        }
+
+    }
+
+    /**
+     * A filter whose static declarations match a route.
+     */
+    private static final class Candidate {
+
+        private final ExtensionFilter filter;
+        private final boolean dynamic;
+        private final ExtensionFilterCircuitBreaker breaker; // May be null
+        private final boolean cacheable;
+
+        private Candidate(ExtensionFilter filter, boolean dynamic, ExtensionFilterCircuitBreaker breaker) {
+            this.filter = filter;
+            this.dynamic = dynamic;
+            this.breaker = breaker;
+            this.cacheable = filter instanceof CacheableExtensionFilter;
+        }
+
+        private boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity,
+                HttpServletRequest request, ExtensionFilterMetrics metrics) {
+            if (!dynamic) {
+                return true;
+            }
+            final boolean rslt = filter.appliesTo(metadata, entity, request);
+            if (metrics != null) {
+                metrics.recordApplies(filter, metadata, rslt);
+            }
+            return rslt;
+        }
+
+        @Override
+        public String toString() {
+            return filter + (dynamic ? " (dynamic)" : "");
+        }
+
+    }
+
     private static final class ExtensionFilterChainImpl<E extends FbmsEntity> implements ExtensionFilterChain<E> {
 
         private final ExtensionFilterChainMetadata metadata;
@@ -156,4 +399,421 @@ public class ExtensionFilterChainBuilder {
 
     }
 
+    /**
+     * Surrounds the enclosed filter with metrics (when available) and the circuit breaker of its
+     * policy (when guarded).  Measures the time spent in the enclosed filter separately from the
+     * time spent in the rest of the chain.
+     */
+    private static final class InstrumentedExtensionFilterChainImpl<E extends FbmsEntity> implements ExtensionFilterChain<E> {
+
+        private final ExtensionFilterChainMetadata metadata;
+        private final ExtensionFilter<E> enclosed;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final ExtensionFilterChain<E> nextLink;
+        private final ExtensionFilterMetrics metrics; // May be null
+        private final ExtensionFilterCircuitBreaker breaker; // May be null
+
+        /* package-private */ InstrumentedExtensionFilterChainImpl(ExtensionFilterChainMetadata metadata,
+                ExtensionFilter<E> enclosed, HttpServletRequest request, HttpServletResponse response,
+                ExtensionFilterChain<E> nextLink, ExtensionFilterMetrics metrics,
+                ExtensionFilterCircuitBreaker breaker) {
+
+            this.metadata = metadata;
+            this.enclosed = enclosed;
+            this.request = request;
+            this.response = response;
+            this.nextLink = nextLink;
+            this.metrics = metrics;
+            this.breaker = breaker;
+
+        }
+
+        @Override
+        public ExtensionFilterChainMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public final E doFilter(E entity) {
+
+            final ExtensionFilterCircuitBreaker.Permit permit = breaker != null
+                    ? breaker.tryAcquire()
+                    : ExtensionFilterCircuitBreaker.Permit.ALLOWED;
+            if (permit == ExtensionFilterCircuitBreaker.Permit.REJECTED) {
+                if (breaker.getPolicy().isFailOpen()) {
+                    breaker.record("skipped");
+                    return nextLink.doFilter(entity);
+                }
+                breaker.record("rejected");
+                throw new ExtensionFilterUnavailableException("Filter " + enclosed
+                        + " is unavailable because its circuit is open", breaker.getRetryAfterSeconds());
+            }
+
+            final DownstreamLink<E> downstream = new DownstreamLink<>(metadata, nextLink);
+            String outcome = ExtensionFilterMetrics.OUTCOME_ERRORED;
+            boolean failed = false;
+            final long start = System.nanoTime();
+            try {
+                final E rslt = enclosed.doFilter(entity, request, response, downstream);
+                outcome = ExtensionFilterMetrics.OUTCOME_PASSED;
+                return rslt;
+            } catch (CachedResultSignal e) {
+                outcome = ExtensionFilterMetrics.OUTCOME_CACHED;
+                throw e;
+            } catch (RuntimeException e) {
+                if (e == downstream.thrown) {
+                    // Not a failure of this filter
+                    outcome = ExtensionFilterMetrics.OUTCOME_DOWNSTREAM_FAILED;
+                    throw e;
+                }
+                if (e instanceof ExtensionFilterChainAbortException) {
+                    outcome = ExtensionFilterMetrics.OUTCOME_ABORTED;
+                    throw e;
+                }
+                if (breaker == null) {
+                    throw e;
+                }
+                failed = true;
+                if (!breaker.getPolicy().isFailOpen()) {
+                    throw e;
+                }
+                breaker.failedOpen(e);
+                return downstream.invoked ? downstream.result : downstream.doFilter(entity);
+            } finally {
+                final long totalNanos = System.nanoTime() - start;
+                final long selfNanos = totalNanos - downstream.nanos;
+                if (metrics != null) {
+                    metrics.recordInvocation(enclosed, metadata, outcome, totalNanos, selfNanos);
+                }
+                if (breaker != null) {
+                    if (breaker.isSlowCall(selfNanos) || failed) {
+                        breaker.onFailure(permit);
+                    } else {
+                        breaker.onSuccess(permit);
+                    }
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Invokes the enclosed {@link CacheableExtensionFilter} as usual, so its inbound logic runs
+     * before the rest of the chain.  When the filter invokes the rest of the chain, the entity it
+     * returns is used to look up a cached output (see {@link CachingDownstreamLink});  if one is
+     * available, the remainder of the filter is skipped and a copy of the cached output is returned.
+     * Otherwise a copy of the filter's output is cached.
+     */
+    private final class CachingExtensionFilterChainImpl<E extends FbmsEntity> implements ExtensionFilterChain<E> {
+
+        private final ExtensionFilterChainMetadata metadata;
+        private final Candidate candidate;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final ExtensionFilterChain<E> nextLink;
+
+        /* package-private */ CachingExtensionFilterChainImpl(ExtensionFilterChainMetadata metadata,
+                Candidate candidate, HttpServletRequest request, HttpServletResponse response,
+                ExtensionFilterChain<E> nextLink) {
+
+            this.metadata = metadata;
+            this.candidate = candidate;
+            this.request = request;
+            this.response = response;
+            this.nextLink = nextLink;
+
+        }
+
+        @Override
+        public ExtensionFilterChainMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public final E doFilter(E entity) {
+
+            final CachingDownstreamLink<E> downstream =
+                    new CachingDownstreamLink<>(metadata, candidate, request, nextLink);
+            final E rslt;
+            try {
+                rslt = link(metadata, candidate, request, response, downstream).doFilter(entity);
+            } catch (CachedResultSignal signal) {
+                return (E) copy(downstream.hit);
+            }
+            if (downstream.hit != null) {
+                // The filter caught the signal;  its output is the cached one by contract
+                return (E) copy(downstream.hit);
+            }
+            if (downstream.key != null && entityId(rslt) != null) {
+                results.put(downstream.key, copy(rslt)); // Callers may modify the result
+            }
+            return rslt;
+
+        }
+
+    }
+
+    /**
+     * The rest of the chain, as seen by a {@link CacheableExtensionFilter}.  Computes the cache key
+     * from the entity the rest of the chain returns, including a digest of its content (which other
+     * filters may have changed for this request), and throws a {@link CachedResultSignal} if the
+     * output of the filter for that key is cached.
+     */
+    private final class CachingDownstreamLink<E extends FbmsEntity> implements ExtensionFilterChain<E> {
+
+        private final ExtensionFilterChainMetadata metadata;
+        private final Candidate candidate;
+        private final HttpServletRequest request;
+        private final ExtensionFilterChain<E> nextLink;
+
+        private ResultKey key;
+        private FbmsEntity hit;
+
+        private CachingDownstreamLink(ExtensionFilterChainMetadata metadata, Candidate candidate,
+                HttpServletRequest request, ExtensionFilterChain<E> nextLink) {
+            this.metadata = metadata;
+            this.candidate = candidate;
+            this.request = request;
+            this.nextLink = nextLink;
+        }
+
+        @Override
+        public ExtensionFilterChainMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E doFilter(E entity) {
+            final E rslt = nextLink.doFilter(entity);
+            final Object entityId = entityId(rslt);
+            if (entityId == null) {
+                return rslt; // Not cacheable
+            }
+            final Object filterKey = ((CacheableExtensionFilter<E>) candidate.filter)
+                    .getCacheKey(metadata, rslt, request);
+            if (filterKey == null) {
+                return rslt;
+            }
+            key = new ResultKey(candidate.filter, metadata.getEntityClass(), metadata.getFname(),
+                    entityId, contentDigest(rslt), filterKey);
+            hit = results.get(key);
+            if (hit != null) {
+                throw new CachedResultSignal();
+            }
+            return rslt;
+        }
+
+    }
+
+    /**
+     * Unwinds a {@link CacheableExtensionFilter} whose output is cached.  Not an error, so it has no
+     * stack trace.
+     */
+    /* package-private */ static final class CachedResultSignal extends RuntimeException {
+
+        private CachedResultSignal() {
+            super("The output of the filter is cached", null, false, false);
+        }
+
+    }
+
+    /**
+     * The rest of the chain, as seen by an instrumented filter.  Records the time spent in it, its
+     * result, and any exception it throws.  Filters may invoke the chain more than once.
+     */
+    private static final class DownstreamLink<E extends FbmsEntity> implements ExtensionFilterChain<E> {
+
+        private final ExtensionFilterChainMetadata metadata;
+        private final ExtensionFilterChain<E> nextLink;
+
+        private long nanos = 0L;
+        private boolean invoked = false;
+        private E result;
+        private RuntimeException thrown;
+
+        private DownstreamLink(ExtensionFilterChainMetadata metadata, ExtensionFilterChain<E> nextLink) {
+            this.metadata = metadata;
+            this.nextLink = nextLink;
+        }
+
+        @Override
+        public ExtensionFilterChainMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public E doFilter(E entity) {
+            invoked = true;
+            final long start = System.nanoTime();
+            try {
+                result = nextLink.doFilter(entity);
+                return result;
+            } catch (RuntimeException e) {
+                thrown = e;
+                throw e;
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * Obtains the filters whose static declarations match the operation, in order.
+     */
+    private List<Candidate> getCandidates(ExtensionFilterChainMetadata metadata, HttpServletRequest request) {
+        final String method = request.getMethod() != null ? request.getMethod().toUpperCase(Locale.ROOT) : null;
+        final Route route = new Route(metadata.getEntityClass(), method, metadata.getFname());
+        return candidates.get(route, this::compile);
+    }
+
+    private List<Candidate> compile(Route route) {
+        final List<Candidate> rslt = new ArrayList<>();
+        for (ExtensionFilter filter : filters) {
+            final ExtensionFilterApplicability applicability = filter.getApplicability();
+            if (applicability.matches(route.entityClass, route.method, route.fname)) {
+                rslt.add(new Candidate(filter, applicability.isDynamic(), getCircuitBreaker(filter)));
+            }
+        }
+        logger.debug("Compiled the following candidate filters for {}:  {}", route, rslt);
+        return Collections.unmodifiableList(rslt);
+    }
+
+    /**
+     * Returns the circuit breaker for the filter, or <code>null</code> if its policy is unguarded.
+     */
+    private ExtensionFilterCircuitBreaker getCircuitBreaker(ExtensionFilter filter) {
+        final ExtensionFilterPolicy policy = filter.getPolicy();
+        if (policy == null || !policy.isGuarded()) {
+            return null;
+        }
+        return breakers.computeIfAbsent(filter, f -> {
+            logger.info("Filter {} is guarded by a circuit breaker:  {}", f, policy);
+            return new ExtensionFilterCircuitBreaker(f, policy, metrics);
+        });
+    }
+
+    /**
+     * Surrounds the rest of the chain with the candidate filter.
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends FbmsEntity> ExtensionFilterChain<E> link(ExtensionFilterChainMetadata metadata,
+            Candidate candidate, HttpServletRequest request, HttpServletResponse response,
+            ExtensionFilterChain<E> nextLink) {
+        return metrics != null || candidate.breaker != null
+                ? new InstrumentedExtensionFilterChainImpl(metadata, candidate.filter, request, response,
+                        nextLink, metrics, candidate.breaker)
+                : new ExtensionFilterChainImpl(metadata, candidate.filter, request, response, nextLink);
+    }
+
+    /* package-private */ void initResults(long maximumWeight, long timeToLiveMillis) {
+        results = new BoundedCache<>(RESULTS_CACHE_NAME, maximumWeight, timeToLiveMillis,
+                ExtensionFilterChainBuilder::weigh);
+    }
+
+    /**
+     * Discards cached filter results for versions of the form older than the specified one.
+     */
+    private void evictResults(FormIdentifier savedId) {
+        if (results == null || savedId == null) {
+            return;
+        }
+        results.invalidateAll(key -> key.entityId instanceof FormIdentifier
+                && Objects.equals(((FormIdentifier) key.entityId).getFname(), savedId.getFname())
+                && ((FormIdentifier) key.entityId).getVersion() < savedId.getVersion());
+    }
+
+    /**
+     * Submissions are queued (not saved) by the chain when write-behind is enabled.
+     */
+    private boolean isWrittenBehind(FbmsEntity saved) {
+        return saved instanceof SubmissionEntity && submissionWriter != null && submissionWriter.isEnabled();
+    }
+
+    /**
+     * Identifies entities whose filter results may be cached, or returns <code>null</code>.
+     */
+    private static Object entityId(FbmsEntity entity) {
+        if (entity instanceof FormEntity) {
+            return ((FormEntity) entity).getId();
+        }
+        if (entity instanceof SubmissionEntity) {
+            return ((SubmissionEntity) entity).getId();
+        }
+        return null;
+    }
+
+    /**
+     * Identifies the content of an entity for which {@link #entityId(FbmsEntity)} is not
+     * <code>null</code> exactly, usually without materializing it (see {@link StoredJson#digest()}).
+     */
+    private static String contentDigest(FbmsEntity entity) {
+        if (entity instanceof FormEntity) {
+            final FormEntity form = (FormEntity) entity;
+            return digest(form.getStoredSchema()) + "/" + digest(form.getStoredMetadata());
+        }
+        return digest(((SubmissionEntity) entity).getStoredAnswers());
+    }
+
+    private static String digest(StoredJson storedJson) {
+        return storedJson != null ? storedJson.digest() : "-";
+    }
+
+    private static FbmsEntity copy(FbmsEntity entity) {
+        return entity instanceof FormEntity
+                ? ((FormEntity) entity).deepCopy()
+                : ((SubmissionEntity) entity).deepCopy();
+    }
+
+    private static long weigh(FbmsEntity entity) {
+        long rslt = 0L;
+        if (entity instanceof FormEntity) {
+            final FormEntity form = (FormEntity) entity;
+            rslt += form.getStoredSchema() != null ? form.getStoredSchema().estimateSize() : 0L;
+            rslt += form.getStoredMetadata() != null ? form.getStoredMetadata().estimateSize() : 0L;
+        } else if (entity instanceof SubmissionEntity) {
+            final SubmissionEntity submission = (SubmissionEntity) entity;
+            rslt += submission.getStoredAnswers() != null ? submission.getStoredAnswers().estimateSize() : 0L;
+        }
+        return rslt;
+    }
+
+    /**
+     * Evaluates the dynamic checks of the candidate filters (once per operation).
+     */
+    private List<Candidate> selectCandidates(ExtensionFilterChainMetadata metadata, FbmsEntity entity,
+            HttpServletRequest request) {
+        final List<Candidate> candidates = getCandidates(metadata, request);
+        final List<Candidate> rslt = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (candidate.appliesTo(metadata, entity, request, metrics)) {
+                rslt.add(candidate);
+            }
+        }
+        return rslt;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends FbmsEntity> ExtensionFilterChain<E> buildChain(ExtensionFilterChainMetadata metadata,
+            List<Candidate> applicable, HttpServletRequest request, HttpServletResponse response,
+            ExtensionFilterChain<E> center) {
+
+        ExtensionFilterChain<E> rslt = center;
+        for (Candidate candidate : applicable) {
+            rslt = candidate.cacheable && results != null && "GET".equalsIgnoreCase(request.getMethod())
+                    ? new CachingExtensionFilterChainImpl(metadata, candidate, request, response, rslt)
+                    : link(metadata, candidate, request, response, rslt);
+        }
+        return rslt;
+
+    }
+
 }
@@ -0,0 +1,162 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the consecutive failures of one guarded {@link ExtensionFilter} and decides whether it may
+ * be invoked (see {@link ExtensionFilterPolicy}).  Every permit obtained from
+ * {@link #tryAcquire()} must be returned through {@link #onSuccess(Permit)} or
+ * {@link #onFailure(Permit)}.
+ */
+/* package-private */ final class ExtensionFilterCircuitBreaker {
+
+    private final ExtensionFilter filter;
+    private final ExtensionFilterPolicy policy;
+    private final ExtensionFilterMetrics metrics; // May be null
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInProgress = new AtomicBoolean();
+    private volatile boolean open = false;
+    private volatile long openedAtNanos;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /* package-private */ ExtensionFilterCircuitBreaker(ExtensionFilter filter, ExtensionFilterPolicy policy,
+            ExtensionFilterMetrics metrics) {
+        this.filter = filter;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /* package-private */ ExtensionFilterPolicy getPolicy() {
+        return policy;
+    }
+
+    /* package-private */ Permit tryAcquire() {
+        if (!open) {
+            return Permit.ALLOWED;
+        }
+        if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis())) {
+            return Permit.REJECTED;
+        }
+        // Half-open:  one request at a time may probe
+        return probeInProgress.compareAndSet(false, true) ? Permit.PROBE : Permit.REJECTED;
+    }
+
+    /* package-private */ void onSuccess(Permit permit) {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (permit == Permit.PROBE) {
+            open = false;
+            probeInProgress.set(false);
+            logger.info("Closed the circuit for filter {}", filter);
+            record("closed");
+        }
+    }
+
+    /* package-private */ void onFailure(Permit permit) {
+        if (permit == Permit.PROBE) {
+            openedAtNanos = System.nanoTime();
+            probeInProgress.set(false);
+            logger.warn("The probe for filter {} failed;  the circuit remains open", filter);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= policy.getFailureThreshold() && !open) {
+            openedAtNanos = System.nanoTime();
+            open = true;
+            logger.warn("Opened the circuit for filter {} after {} consecutive failures;  it will be {} for {}ms",
+                    filter, consecutiveFailures.get(), policy.isFailOpen() ? "skipped" : "rejecting requests",
+                    policy.getOpenMillis());
+            record("opened");
+        }
+    }
+
+    /**
+     * Invoked when a fail-open filter throws an exception, before the request continues without it.
+     */
+    /* package-private */ void failedOpen(RuntimeException e) {
+        logger.warn("Filter {} failed;  continuing without it", filter, e);
+    }
+
+    /**
+     * Indicates whether an invocation in which the filter spent the specified time on its own
+     * processing was a slow call (which counts as a failure).  Evaluated once the invocation has
+     * returned, so it cannot detect a call that never does.
+     */
+    /* package-private */ boolean isSlowCall(long selfNanos) {
+        final long thresholdNanos = policy.getSlowCallThresholdNanos();
+        if (thresholdNanos == 0L || selfNanos <= thresholdNanos) {
+            return false;
+        }
+        logger.warn("Filter {} exceeded its slow-call threshold of {}ms (took {}ms)", filter,
+                policy.getSlowCallThresholdMillis(), TimeUnit.NANOSECONDS.toMillis(selfNanos));
+        record("slowCall");
+        return true;
+    }
+
+    /**
+     * Approximately how long until a probe will be allowed (at least 1 second).
+     */
+    /* package-private */ long getRetryAfterSeconds() {
+        final long remainingNanos = TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis())
+                - (System.nanoTime() - openedAtNanos);
+        return Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(remainingNanos));
+    }
+
+    /* package-private */ void record(String event) {
+        if (metrics != null) {
+            metrics.recordCircuitBreakerEvent(filter, event);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionFilterCircuitBreaker{" +
+                "filter=" + filter +
+                ", open=" + open +
+                ", consecutiveFailures=" + consecutiveFailures +
+                '}';
+    }
+
+    /*
+     * Nested Types
+     */
+
+    /* package-private */ enum Permit {
+
+        ALLOWED,
+
+        /**
+         * The circuit is half-open, and this invocation decides whether it closes.
+         */
+        PROBE,
+
+        REJECTED
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes Micrometer metrics for the {@link ExtensionFilter} beans in filter chains:
+ *
+ * <ul>
+ *   <li><code>fbms.filters.total</code> (timer):  the time from entering a filter to leaving it,
+ *   including the rest of the chain</li>
+ *   <li><code>fbms.filters.self</code> (timer):  the same, excluding the time spent in the rest
+ *   of the chain (i.e. the filter's own work)</li>
+ *   <li><code>fbms.filters.applies</code> (counter):  the outcomes of <code>appliesTo</code></li>
+ *   <li><code>fbms.filters.circuitBreaker</code> (counter):  events of the circuit breakers of
+ *   guarded filters (see {@link ExtensionFilterPolicy})</li>
+ * </ul>
+ *
+ * <p>Timers are tagged with <code>filter</code>, <code>entity</code>, <code>fname</code>, and
+ * <code>outcome</code> (<code>passed</code>, <code>aborted</code> for an
+ * {@link ExtensionFilterChainAbortException}, <code>errored</code>, or <code>cached</code> for a
+ * {@link CacheableExtensionFilter} whose output was reused).  An exception passes through every
+ * filter that surrounds the one that threw it;  those filters report
+ * <code>downstreamFailed</code>, so that <code>aborted</code> and <code>errored</code> identify the
+ * filter responsible.  The number of distinct fname tag values is limited (beyond the limit the
+ * value is <code>other</code>), because fnames come from request URIs.
+ */
+/* package-private */ final class ExtensionFilterMetrics {
+
+    /* package-private */ static final String OUTCOME_PASSED = "passed";
+    /* package-private */ static final String OUTCOME_ABORTED = "aborted";
+    /* package-private */ static final String OUTCOME_ERRORED = "errored";
+    /* package-private */ static final String OUTCOME_CACHED = "cached";
+    /* package-private */ static final String OUTCOME_DOWNSTREAM_FAILED = "downstreamFailed";
+
+    private static final int MAXIMUM_FNAME_TAGS = 1000;
+
+    private static final String NONE = "none";
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> taggedFnames = ConcurrentHashMap.newKeySet();
+
+    /* package-private */ ExtensionFilterMetrics(MeterRegistry meterRegistry) {
+        if (meterRegistry == null) {
+            throw new IllegalArgumentException("Argument 'meterRegistry' cannot be null");
+        }
+        this.meterRegistry = meterRegistry;
+    }
+
+    /* package-private */ void recordApplies(ExtensionFilter filter, ExtensionFilterChainMetadata metadata,
+            boolean applies) {
+        Counter.builder("fbms.filters.applies")
+                .description("Outcomes of ExtensionFilter.appliesTo")
+                .tag("filter", filterTag(filter))
+                .tag("entity", entityTag(metadata))
+                .tag("applies", Boolean.toString(applies))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /* package-private */ void recordInvocation(ExtensionFilter filter, ExtensionFilterChainMetadata metadata,
+            String outcome, long totalNanos, long selfNanos) {
+        final String filterTag = filterTag(filter);
+        final String entityTag = entityTag(metadata);
+        final String fnameTag = fnameTag(metadata);
+        Timer.builder("fbms.filters.total")
+                .description("Time spent in an ExtensionFilter, including the rest of the chain")
+                .tags("filter", filterTag, "entity", entityTag, "fname", fnameTag, "outcome", outcome)
+                .register(meterRegistry)
+                .record(totalNanos, TimeUnit.NANOSECONDS);
+        Timer.builder("fbms.filters.self")
+                .description("Time spent in an ExtensionFilter, excluding the rest of the chain")
+                .tags("filter", filterTag, "entity", entityTag, "fname", fnameTag, "outcome", outcome)
+                .register(meterRegistry)
+                .record(selfNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /* package-private */ void recordCircuitBreakerEvent(ExtensionFilter filter, String event) {
+        Counter.builder("fbms.filters.circuitBreaker")
+                .description("Circuit breaker events of guarded ExtensionFilters")
+                .tag("filter", filterTag(filter))
+                .tag("event", event)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /*
+     * Implementation
+     */
+
+    private static String filterTag(ExtensionFilter filter) {
+        final String rslt = filter.getClass().getSimpleName();
+        return rslt.isEmpty() ? filter.getClass().getName() : rslt; // Anonymous classes
+    }
+
+    private static String entityTag(ExtensionFilterChainMetadata metadata) {
+        return metadata.getEntityClass() != null ? metadata.getEntityClass().getSimpleName() : NONE;
+    }
+
+    private String fnameTag(ExtensionFilterChainMetadata metadata) {
+        final String fname = metadata.getFname();
+        if (fname == null) {
+            return NONE;
+        }
+        if (taggedFnames.contains(fname)) {
+            return fname;
+        }
+        if (taggedFnames.size() < MAXIMUM_FNAME_TAGS) {
+            taggedFnames.add(fname); // May slightly exceed the limit under contention
+            return fname;
+        }
+        return OTHER;
+    }
+
+}
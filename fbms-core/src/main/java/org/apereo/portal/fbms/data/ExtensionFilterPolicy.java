@@ -0,0 +1,192 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Declares how the {@link ExtensionFilterChainBuilder} should protect requests from an
+ * {@link ExtensionFilter} that depends on a slow or unreliable system.  A guarded filter has a
+ * circuit breaker:  after <code>failureThreshold</code> consecutive failures the circuit opens, and
+ * for <code>openMillis</code> the filter is not invoked.  Then a single request is allowed through
+ * as a probe;  if it succeeds, the circuit closes again.
+ *
+ * <p>A failure is an exception thrown by the filter itself (other than an
+ * {@link ExtensionFilterChainAbortException}, which is the filter working as intended) or a slow
+ * call:  an invocation in which the filter's own processing (i.e. excluding the rest of the
+ * chain) took longer than the slow-call threshold.  The threshold is not a timeout.  Filters run on
+ * the request thread and are not interrupted, and an invocation is measured only once it returns,
+ * so a call that hangs holds its request thread indefinitely and is never counted.  Filters must
+ * therefore set timeouts on their own calls to other systems;  the threshold only lets calls that
+ * return slowly open the circuit (see {@link #getSlowCallThresholdMillis()}).
+ *
+ * <p>The failure mode decides what happens when the filter fails or its circuit is open:
+ * {@link FailureMode#FAIL_OPEN} continues the request without the filter;
+ * {@link FailureMode#FAIL_CLOSED} rejects it (with an {@link ExtensionFilterUnavailableException}
+ * when the circuit is open).
+ */
+public final class ExtensionFilterPolicy {
+
+    /**
+     * No slow-call threshold and no circuit breaker;  exceptions thrown by the filter propagate to the
+     * caller.  The default for filters that do not declare a policy.
+     */
+    public static final ExtensionFilterPolicy UNGUARDED =
+            new ExtensionFilterPolicy(0L, FailureMode.FAIL_CLOSED, 0, 0L);
+
+    private final long slowCallThresholdMillis;
+    private final FailureMode failureMode;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private ExtensionFilterPolicy(long slowCallThresholdMillis, FailureMode failureMode, int failureThreshold,
+            long openMillis) {
+        this.slowCallThresholdMillis = slowCallThresholdMillis;
+        this.failureMode = failureMode;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Indicates whether the filter has a circuit breaker.
+     */
+    public boolean isGuarded() {
+        return failureThreshold > 0;
+    }
+
+    /**
+     * Invocations in which the filter's own processing took longer than this (once they return)
+     * count as failures;  0 means that slow calls are not failures.  Not a timeout.
+     */
+    public long getSlowCallThresholdMillis() {
+        return slowCallThresholdMillis;
+    }
+
+    public FailureMode getFailureMode() {
+        return failureMode;
+    }
+
+    public boolean isFailOpen() {
+        return failureMode == FailureMode.FAIL_OPEN;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    /* package-private */ long getSlowCallThresholdNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionFilterPolicy{" +
+                "slowCallThresholdMillis=" + slowCallThresholdMillis +
+                ", failureMode=" + failureMode +
+                ", failureThreshold=" + failureThreshold +
+                ", openMillis=" + openMillis +
+                '}';
+    }
+
+    /*
+     * Nested Types
+     */
+
+    public enum FailureMode {
+
+        /**
+         * Continue the request without the filter.
+         */
+        FAIL_OPEN,
+
+        /**
+         * Reject the request.
+         */
+        FAIL_CLOSED
+
+    }
+
+    public static final class Builder {
+
+        private long slowCallThresholdMillis = 0L;
+        private FailureMode failureMode = FailureMode.FAIL_CLOSED;
+        private int failureThreshold = 5;
+        private long openMillis = 30000L;
+
+        private Builder() {}
+
+        /**
+         * Invocations in which the filter's own processing takes longer than this count as
+         * failures (default 0, i.e. never).  Not a timeout;  see {@link ExtensionFilterPolicy}.
+         */
+        public Builder slowCallThresholdMillis(long slowCallThresholdMillis) {
+            if (slowCallThresholdMillis < 0L) {
+                throw new IllegalArgumentException("Argument 'slowCallThresholdMillis' cannot be negative");
+            }
+            this.slowCallThresholdMillis = slowCallThresholdMillis;
+            return this;
+        }
+
+        public Builder failOpen() {
+            this.failureMode = FailureMode.FAIL_OPEN;
+            return this;
+        }
+
+        public Builder failClosed() {
+            this.failureMode = FailureMode.FAIL_CLOSED;
+            return this;
+        }
+
+        /**
+         * The number of consecutive failures that opens the circuit (default 5).
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("Argument 'failureThreshold' must be at least 1");
+            }
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * How long the circuit remains open before a probe is allowed (default 30 seconds).
+         */
+        public Builder openMillis(long openMillis) {
+            if (openMillis < 0L) {
+                throw new IllegalArgumentException("Argument 'openMillis' cannot be negative");
+            }
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        public ExtensionFilterPolicy build() {
+            return new ExtensionFilterPolicy(slowCallThresholdMillis, failureMode, failureThreshold, openMillis);
+        }
+
+    }
+
+}
@@ -20,12 +20,14 @@ package org.apereo.portal.fbms.data;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Column;
-import javax.persistence.Convert;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.Lob;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import java.util.Objects;
 
 @Entity
@@ -38,15 +40,16 @@ public class FormEntity implements FbmsEntity {
     @EmbeddedId
     private FormIdentifier id;
 
-    @Column(name = "FORM_SCHEMA", length=100000, nullable = false)
-    @Convert(converter = JsonNodeToStringAttributeConverter.class)
-    @Lob
-    private JsonNode schema;
+    /*
+     * The JSON columns are mapped through property access so that values that were never
+     * materialized are written back (e.g. by merge) exactly as they were read.
+     */
 
-    @Column(name = "FORM_METADATA", length=100000)
-    @Convert(converter = JsonNodeToStringAttributeConverter.class)
-    @Lob
-    private JsonNode metadata;
+    @Transient
+    private StoredJson schema;
+
+    @Transient
+    private StoredJson metadata;
 
     public FormIdentifier getId() {
         return id;
@@ -56,22 +59,94 @@ public class FormEntity implements FbmsEntity {
         this.id = id;
     }
 
+    /**
+     * Obtains the schema, parsing it from its stored representation on first access.
+     */
     public JsonNode getSchema() {
-        return schema;
+        return schema != null ? schema.get() : null;
     }
 
     public void setSchema(JsonNode schema) {
+        this.schema = StoredJson.of(schema);
+    }
+
+    /**
+     * Provides access to the schema without parsing it.
+     */
+    public StoredJson getStoredSchema() {
+        return schema;
+    }
+
+    /**
+     * Replaces the schema with a value that need not have been parsed (e.g. JSON text wrapped by
+     * {@link StoredJson#ofEncoded(String)}).
+     */
+    public void setStoredSchema(StoredJson schema) {
         this.schema = schema;
     }
 
+    /**
+     * Obtains the metadata, parsing it from its stored representation on first access.
+     */
     public JsonNode getMetadata() {
-        return metadata;
+        return metadata != null ? metadata.get() : null;
     }
 
     public void setMetadata(JsonNode metadata) {
+        this.metadata = StoredJson.of(metadata);
+    }
+
+    /**
+     * Provides access to the metadata without parsing it.
+     */
+    public StoredJson getStoredMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Replaces the metadata with a value that need not have been parsed.
+     */
+    public void setStoredMetadata(StoredJson metadata) {
         this.metadata = metadata;
     }
 
+    @Access(AccessType.PROPERTY)
+    @Column(name = "FORM_SCHEMA", length=100000, nullable = false)
+    @Lob
+    protected String getSchemaColumn() {
+        return schema != null ? schema.encode() : null;
+    }
+
+    protected void setSchemaColumn(String schemaColumn) {
+        this.schema = StoredJson.ofEncoded(schemaColumn);
+    }
+
+    @Access(AccessType.PROPERTY)
+    @Column(name = "FORM_METADATA", length=100000)
+    @Lob
+    protected String getMetadataColumn() {
+        return metadata != null ? metadata.encode() : null;
+    }
+
+    protected void setMetadataColumn(String metadataColumn) {
+        this.metadata = StoredJson.ofEncoded(metadataColumn);
+    }
+
+    /**
+     * Creates a copy of this {@link FormEntity} that shares no mutable state with the original.
+     * Useful when the original is shared (e.g. cached) and must not be modified.
+     */
+    public FormEntity deepCopy() {
+        final FormIdentifier copyId = new FormIdentifier();
+        copyId.setFname(id.getFname());
+        copyId.setVersion(id.getVersion());
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(copyId);
+        rslt.schema = schema != null ? schema.deepCopy() : null;
+        rslt.metadata = metadata != null ? metadata.deepCopy() : null;
+        return rslt;
+    }
+
     @Override
     public String toString() {
         return "FormEntity{" +
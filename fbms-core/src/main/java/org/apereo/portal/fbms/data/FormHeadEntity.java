@@ -0,0 +1,87 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Objects;
+
+/**
+ * Records the current (most recent) version of each Form, so that the current {@link FormEntity}
+ * can be found by primary key instead of sorting the versions in FBMS_FORM.  Maintained by
+ * {@link FormRepository#save(FormEntity)} in the same transaction as the form itself.
+ */
+@Entity
+@Table(name = "FBMS_FORM_HEAD")
+public class FormHeadEntity {
+
+    @Id
+    @Column(name = "FORM_FNAME", nullable = false)
+    private String fname;
+
+    @Column(name = "FORM_VERSION", nullable = false)
+    private int version;
+
+    public FormHeadEntity() {}
+
+    public FormHeadEntity(String fname, int version) {
+        this.fname = fname;
+        this.version = version;
+    }
+
+    public String getFname() {
+        return fname;
+    }
+
+    public void setFname(String fname) {
+        this.fname = fname;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "FormHeadEntity{" +
+                "fname='" + fname + '\'' +
+                ", version=" + version +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FormHeadEntity that = (FormHeadEntity) o;
+        return Objects.equals(fname, that.fname);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fname);
+    }
+
+}
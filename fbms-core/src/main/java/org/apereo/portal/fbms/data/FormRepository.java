@@ -18,14 +18,77 @@
  */
 package org.apereo.portal.fbms.data;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 
-public interface FormRepository extends CrudRepository<FormEntity,FormIdentifier> {
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface FormRepository extends CrudRepository<FormEntity,FormIdentifier>, FormRepositoryCustom {
+
+    /**
+     * Number of rows the JDBC driver fetches per round trip for streaming queries.
+     */
+    String STREAM_FETCH_SIZE = "50";
 
     boolean existsByIdFname(String fname);
 
+    /**
+     * Sorts every version of the form;  prefer {@link #findCurrentByFname(String)}.
+     */
     FormEntity findFirstByIdFnameOrderByIdVersionDesc(String fname);
 
+    /**
+     * Returns the current (most recent) version of the form with the specified fname, or
+     * <code>null</code> if there isn't one.  Resolved through FBMS_FORM_HEAD by primary key, so
+     * the cost does not grow with the number of versions.
+     */
+    @Query("SELECT f FROM FormEntity f, FormHeadEntity h " +
+            "WHERE h.fname = :fname AND f.id.fname = h.fname AND f.id.version = h.version")
+    FormEntity findCurrentByFname(@Param("fname") String fname);
+
+    /**
+     * Returns the most recent version number of the form with the specified fname (or
+     * <code>null</code> if there isn't one) without loading the form itself.
+     */
+    @Query("SELECT h.version FROM FormHeadEntity h WHERE h.fname = :fname")
+    Integer findLatestVersionByFname(@Param("fname") String fname);
+
+    /**
+     * Lists the fnames of forms that sort after the specified value, in fname order.  Reads only
+     * FBMS_FORM_HEAD;  useful for working out the boundaries of a page.
+     */
+    @Query("SELECT h.fname FROM FormHeadEntity h WHERE h.fname > :after ORDER BY h.fname")
+    List<String> findFnamesAfter(@Param("after") String after, Pageable pageable);
+
+    /**
+     * Streams summaries of the current version of each form with an fname that sorts after the
+     * specified value, in fname order (keyset pagination).  Schemas are not loaded.  Must be called
+     * within a transaction, and the <code>Stream</code> must be closed.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new org.apereo.portal.fbms.data.FormSummary(f.id.fname, f.id.version, f.metadataColumn) " +
+            "FROM FormEntity f, FormHeadEntity h " +
+            "WHERE h.fname > :after AND f.id.fname = h.fname AND f.id.version = h.version " +
+            "ORDER BY h.fname")
+    Stream<FormSummary> streamCurrentSummariesAfter(@Param("after") String after);
+
+    /**
+     * Streams the current version of each form with an fname that sorts after the specified value,
+     * in fname order (keyset pagination).  Must be called within a transaction, and the
+     * <code>Stream</code> must be closed.  Callers should detach each entity from the persistence
+     * context once they're finished with it, so that memory use remains constant.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT f FROM FormEntity f, FormHeadEntity h " +
+            "WHERE h.fname > :after AND f.id.fname = h.fname AND f.id.version = h.version " +
+            "ORDER BY h.fname")
+    Stream<FormEntity> streamCurrentAfter(@Param("after") String after);
+
 }
@@ -0,0 +1,47 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+/**
+ * Custom behavior for {@link FormRepository} (implemented by {@link FormRepositoryCustomImpl}).
+ */
+public interface FormRepositoryCustom {
+
+    /**
+     * Saves the specified form as a new version and, in the same transaction, records it in
+     * FBMS_FORM_HEAD as the current version of the form.  Overrides the standard
+     * <code>save</code> method of the repository, so that every save keeps the head table up to
+     * date.  Saves are compare-and-set operations:  version 1 may only be saved for a form that
+     * doesn't exist, and any other version only if it is the successor of the current version.
+     * Existing versions are never overwritten.
+     *
+     * @throws FormVersionConflictException If these conditions aren't met (e.g. because another
+     * request saved the same version first)
+     */
+    <S extends FormEntity> S save(S entity);
+
+    /**
+     * Creates FBMS_FORM_HEAD records for forms that don't have one (e.g. forms that were saved
+     * before the table existed).
+     *
+     * @return The number of records created
+     */
+    int createMissingFormHeads();
+
+}
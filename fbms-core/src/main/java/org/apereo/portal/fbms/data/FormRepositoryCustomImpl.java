@@ -0,0 +1,163 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.hibernate.NonUniqueObjectException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.PessimisticLockException;
+import java.util.List;
+
+public class FormRepositoryCustomImpl implements FormRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JsonContentStore jsonContentStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Saves a new version of a form.  Large JSON values are written to the
+     * {@link JsonContentStore} first (each in its own transaction), so that the transaction that
+     * holds the lock on the head row remains short.
+     */
+    @Override
+    public <S extends FormEntity> S save(S entity) {
+
+        if (jsonContentStore.isEnabled()) {
+            entity.setStoredSchema(externalize(entity.getStoredSchema()));
+            entity.setStoredMetadata(externalize(entity.getStoredMetadata()));
+        }
+
+        return new TransactionTemplate(transactionManager).execute(status -> saveVersion(entity));
+
+    }
+
+    @Override
+    @Transactional
+    public int createMissingFormHeads() {
+
+        final List<Object[]> missing = entityManager.createQuery(
+                "SELECT f.id.fname, MAX(f.id.version) FROM FormEntity f " +
+                        "WHERE NOT EXISTS (SELECT h FROM FormHeadEntity h WHERE h.fname = f.id.fname) " +
+                        "GROUP BY f.id.fname", Object[].class)
+                .getResultList();
+
+        for (Object[] row : missing) {
+            final FormHeadEntity head = new FormHeadEntity((String) row[0], ((Number) row[1]).intValue());
+            logger.info("Creating the missing head record:  {}", head);
+            entityManager.persist(head);
+        }
+
+        return missing.size();
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private <S extends FormEntity> S saveVersion(S entity) {
+
+        final String fname = entity.getId().getFname();
+        final int version = entity.getId().getVersion();
+
+        try {
+            /*
+             * Compare-and-set on the head row:  version 1 must not have a head row yet, and every
+             * other version must be the successor of the version in the head row.  The row lock
+             * taken by the UPDATE is held only until this (short) transaction commits.
+             */
+            if (version == 1) {
+                entityManager.persist(new FormHeadEntity(fname, version));
+            } else {
+                final int updated = entityManager.createQuery(
+                        "UPDATE FormHeadEntity h SET h.version = :version " +
+                                "WHERE h.fname = :fname AND h.version = :previousVersion")
+                        .setParameter("version", version)
+                        .setParameter("fname", fname)
+                        .setParameter("previousVersion", version - 1)
+                        .executeUpdate();
+                if (updated != 1) {
+                    throw new FormVersionConflictException("Version " + version + " of form '" + fname +
+                            "' is not the successor of the current version");
+                }
+            }
+
+            // Never merge;  a duplicate (fname, version) must fail
+            entityManager.persist(entity);
+            entityManager.flush();
+        } catch (PersistenceException e) {
+            if (isConflict(e)) {
+                throw new FormVersionConflictException("Version " + version + " of form '" + fname +
+                        "' has already been saved", e);
+            }
+            throw e;
+        }
+
+        return entity;
+
+    }
+
+    private StoredJson externalize(StoredJson json) {
+        return json != null && !json.isReference()
+                ? StoredJson.ofReference(jsonContentStore.store(json.get()), json.get())
+                : json;
+    }
+
+    /**
+     * Distinguishes failures that mean another transaction saved the same form first (duplicate
+     * keys, lock conflicts) from other failures.
+     */
+    private static boolean isConflict(PersistenceException e) {
+        if (e instanceof EntityExistsException
+                || e instanceof OptimisticLockException
+                || e instanceof PessimisticLockException
+                || e instanceof LockTimeoutException) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException
+                    || cause instanceof LockAcquisitionException
+                    || cause instanceof NonUniqueObjectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Lightweight, read-only view of the current version of a form that omits the schema.  Produced by
+ * {@link FormRepository} queries.
+ */
+public class FormSummary {
+
+    private final String fname;
+    private final int version;
+    private final StoredJson metadata;
+
+    public FormSummary(String fname, Integer version, String metadata) {
+        this.fname = fname;
+        this.version = version;
+        this.metadata = StoredJson.ofEncoded(metadata);
+    }
+
+    public String getFname() {
+        return fname;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public JsonNode getMetadata() {
+        return metadata != null ? metadata.get() : null;
+    }
+
+    /**
+     * The <code>title</code> property of the form metadata, if present;  otherwise
+     * <code>null</code>.
+     */
+    public String getTitle() {
+        final JsonNode title = metadata != null ? metadata.get().get("title") : null;
+        return title != null && title.isValueNode() ? title.asText() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "FormSummary{" +
+                "fname='" + fname + '\'' +
+                ", version=" + version +
+                ", metadata=" + metadata +
+                '}';
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+/**
+ * Thrown when a form cannot be saved because the version being saved is not the successor of the
+ * current version;  typically because another request (possibly on another node) saved a new
+ * version of the same form first.
+ */
+public class FormVersionConflictException extends RuntimeException {
+
+    public FormVersionConflictException(String message) {
+        super(message);
+    }
+
+    public FormVersionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
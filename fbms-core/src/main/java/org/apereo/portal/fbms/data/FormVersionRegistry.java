@@ -0,0 +1,130 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the current version number of every form in memory, so that existence and up-to-date
+ * checks don't require a query.  Loaded from FBMS_FORM_HEAD when the application starts, updated
+ * whenever this node saves a form, and reconciled with the database periodically to pick up forms
+ * saved by other nodes in a cluster.
+ *
+ * <p>Version numbers only move forward.  An fname that isn't in the registry is looked up in the
+ * database before the registry concludes that the form doesn't exist.
+ */
+@Component
+public class FormVersionRegistry {
+
+    @Autowired
+    private FormRepository formRepository;
+
+    @Autowired
+    private FormHeadRepository formHeadRepository;
+
+    private final ConcurrentMap<String,Integer> versions = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Runs after the {@link FormHeadInitializer}, which it depends on.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void init() {
+        reconcile();
+        logger.info("Loaded the current version of {} form(s)", versions.size());
+    }
+
+    /**
+     * Obtains the current version of the form with the specified fname, or <code>null</code> if
+     * there is no such form.
+     */
+    public Integer getCurrentVersion(String fname) {
+        final Integer rslt = versions.get(fname);
+        return rslt != null ? rslt : refresh(fname);
+    }
+
+    /**
+     * Obtains the current version of the form with the specified fname, or <code>null</code> if
+     * there is no such form.  If the registry disagrees with the version the caller expects, the
+     * version is confirmed with the database first, in case another node saved a new version since
+     * the last reconciliation.  Appropriate for operations that reject requests over a version
+     * mismatch.
+     */
+    public Integer confirmCurrentVersion(String fname, int expectedVersion) {
+        final Integer rslt = versions.get(fname);
+        return rslt != null && rslt == expectedVersion ? rslt : refresh(fname);
+    }
+
+    /**
+     * Records that the specified version of a form has been saved.
+     */
+    public void update(String fname, int version) {
+        record(fname, version);
+    }
+
+    /**
+     * Reads the current version of the form with the specified fname from the database.
+     */
+    public Integer refresh(String fname) {
+        final Integer rslt = formRepository.findLatestVersionByFname(fname);
+        if (rslt != null) {
+            record(fname, rslt);
+        }
+        return rslt;
+    }
+
+    /**
+     * Reads the current version of every form from the database.
+     */
+    @Scheduled(fixedDelayString = "${org.apereo.portal.fbms.formVersions.reconcileIntervalMillis:60000}",
+            initialDelayString = "${org.apereo.portal.fbms.formVersions.reconcileIntervalMillis:60000}")
+    public void reconcile() {
+        for (FormHeadEntity head : formHeadRepository.findAll()) {
+            record(head.getFname(), head.getVersion());
+        }
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void record(String fname, int version) {
+        final Integer previous = versions.get(fname);
+        if (previous == null || previous < version) {
+            versions.merge(fname, version, Math::max);
+            if (previous != null) {
+                logger.debug("The current version of form '{}' is now {} (was {})", fname, version, previous);
+            }
+        }
+    }
+
+}
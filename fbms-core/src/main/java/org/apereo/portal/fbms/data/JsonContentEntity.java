@@ -0,0 +1,89 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import java.util.Objects;
+
+/**
+ * A JSON document stored once per distinct content, identified by the SHA-256 hash of its compact
+ * JSON text.  Rows in other tables refer to it (see {@link JsonContentStore}) instead of holding
+ * their own copy.  Rows are immutable;  the content may be written with any
+ * {@link JsonStorageCodec}, since the hash does not depend on the storage format.
+ */
+@Entity
+@Table(name = "FBMS_JSON_CONTENT")
+public class JsonContentEntity {
+
+    @Id
+    @Column(name = "HASH", length = 64, nullable = false)
+    private String hash;
+
+    @Column(name = "CONTENT", length=100000, nullable = false)
+    @Lob
+    private String content;
+
+    public JsonContentEntity() {}
+
+    public JsonContentEntity(String hash, String content) {
+        this.hash = hash;
+        this.content = content;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonContentEntity{" +
+                "hash='" + hash + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        JsonContentEntity that = (JsonContentEntity) o;
+        return Objects.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hash);
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Content-addressed storage for large JSON documents (form schemas and metadata).  Each distinct
+ * document is written to FBMS_JSON_CONTENT once, keyed by the SHA-256 hash of its compact JSON
+ * text, and the column that would otherwise hold a copy holds a short reference instead.  Form
+ * versions that differ only in (say) a label share one copy of everything else, and identical
+ * documents are shared across forms.
+ *
+ * <p>Object keys are hashed in document order rather than sorted, because property order is
+ * meaningful in form schemas (it is the order in which fields are rendered).
+ *
+ * <p>References are resolved through static methods because JPA-managed objects (which are not
+ * Spring beans) need to resolve them.  Content is immutable, so resolved content is cached
+ * without a time-to-live.
+ */
+@Component
+public class JsonContentStore {
+
+    private static final String CACHE_NAME = "jsonContent";
+
+    private static final String REFERENCE_PREFIX = "#sha256:";
+
+    private static final String SELECT_SQL = "SELECT CONTENT FROM FBMS_JSON_CONTENT WHERE HASH = ?";
+
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM FBMS_JSON_CONTENT WHERE HASH = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO FBMS_JSON_CONTENT (HASH, CONTENT) VALUES (?, ?)";
+
+    private static volatile JsonContentStore current;
+
+    /**
+     * When disabled, new form versions hold their own copy of the schema and metadata (the
+     * original behavior).  References that were already written remain readable.
+     */
+    @Value("${org.apereo.portal.fbms.storage.deduplication.enabled:true}")
+    private boolean enabled;
+
+    @Value("${org.apereo.portal.fbms.cache.jsonContent.maximumWeight:20000000}")
+    private long maximumWeight;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final LobHandler lobHandler = new DefaultLobHandler();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Stored (encoded) content by hash.
+     */
+    private BoundedCache<String,String> cache;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        /*
+         * Content is committed on its own, before (and regardless of) the row that refers to it;
+         * a duplicate key must not spoil the transaction of the caller.
+         */
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        cache = new BoundedCache<>(CACHE_NAME, maximumWeight, 0L, String::length);
+        if (meterRegistry != null) {
+            cache.bindTo(meterRegistry);
+        }
+        current = this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Indicates whether the specified column value is a reference to stored content (as opposed to
+     * content written with a {@link JsonStorageCodec}).
+     */
+    public static boolean isReference(String dbData) {
+        return dbData != null && dbData.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * Obtains the stored (encoded) content to which the specified reference refers.
+     */
+    public static String resolve(String reference) {
+        if (!isReference(reference)) {
+            throw new IllegalArgumentException("Not a JSON content reference:  " + reference);
+        }
+        final JsonContentStore store = current;
+        if (store == null) {
+            throw new IllegalStateException("The JsonContentStore has not been initialized");
+        }
+        return store.load(reference.substring(REFERENCE_PREFIX.length()));
+    }
+
+    /**
+     * Stores the specified JSON (unless identical content is already stored) and returns the
+     * reference to write in its place.
+     */
+    public String store(JsonNode json) {
+
+        if (json == null) {
+            throw new IllegalArgumentException("Argument 'json' cannot be null");
+        }
+
+        final String hash = hash(JsonStorageCodec.DEFAULT.encode(json));
+        if (cache.get(hash) == null && !exists(hash)) {
+            final String content = JsonStorageCodec.getCurrent().encode(json);
+            try {
+                transactionTemplate.execute(status -> {
+                    try (LobCreator lobCreator = lobHandler.getLobCreator()) {
+                        return jdbcTemplate.update(INSERT_SQL, ps -> {
+                            ps.setString(1, hash);
+                            lobCreator.setClobAsString(ps, 2, content);
+                        });
+                    }
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Most likely the same content was stored concurrently (here or on another node)
+                if (!exists(hash)) {
+                    throw e;
+                }
+            }
+            cache.put(hash, content);
+        }
+
+        return REFERENCE_PREFIX + hash;
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private String load(String hash) {
+        final String rslt = cache.get(hash, h -> {
+            final List<String> content = jdbcTemplate.query(SELECT_SQL, new Object[] { h },
+                    (rs, rowNum) -> lobHandler.getClobAsString(rs, 1));
+            return content.isEmpty() ? null : content.get(0);
+        });
+        if (rslt == null) {
+            throw new IllegalStateException("No JSON content is stored for hash " + hash);
+        }
+        return rslt;
+    }
+
+    private boolean exists(String hash) {
+        final Integer count = jdbcTemplate.queryForObject(EXISTS_SQL, Integer.class, hash);
+        return count != null && count > 0;
+    }
+
+    /* package-private */ static String hash(String json) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Required of every JVM
+        }
+        final StringBuilder rslt = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            rslt.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return rslt.toString();
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the JSON stored in FBMS text (LOB) columns.  The default codec (JSON, no compression)
+ * writes plain JSON text, which is the original storage format.  Other codecs write a binary
+ * format (Smile or CBOR) and/or a compressed representation, encoded as Base64 behind a header
+ * that identifies the codec, e.g. <code>$smile+lz4:...</code>.  (The header cannot be mistaken
+ * for JSON, which never begins with '$'.)  Binary formats require compression:  Base64 adds a third
+ * to the size of the bytes it encodes, which more than cancels what Smile or CBOR saves over JSON
+ * text.
+ *
+ * <p>Any codec can decode values written by any other, so the codec may be changed at any time;
+ * see {@link JsonStorageMigrator} for converting existing rows.  The codec used for writing is
+ * held statically because JPA <code>AttributeConverter</code> instances are not managed by Spring.
+ */
+public final class JsonStorageCodec {
+
+    public enum Format {
+        JSON(new ObjectMapper()),
+        SMILE(new ObjectMapper(new SmileFactory())),
+        CBOR(new ObjectMapper(new CBORFactory()));
+
+        private final ObjectMapper objectMapper;
+
+        Format(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+    }
+
+    public enum Compression {
+        NONE,
+        DEFLATE,
+        LZ4
+    }
+
+    /**
+     * The codec that produces the original storage format (plain JSON text).
+     */
+    public static final JsonStorageCodec DEFAULT = new JsonStorageCodec(Format.JSON, Compression.NONE);
+
+    private static final char HEADER_PREFIX = '$';
+    private static final char HEADER_SEPARATOR = '+';
+    private static final char HEADER_TERMINATOR = ':';
+
+    private static volatile JsonStorageCodec current = DEFAULT;
+
+    private final Format format;
+    private final Compression compression;
+    private final String header;
+
+    public JsonStorageCodec(Format format, Compression compression) {
+        if (format == null) {
+            throw new IllegalArgumentException("Argument 'format' cannot be null");
+        }
+        if (compression == null) {
+            throw new IllegalArgumentException("Argument 'compression' cannot be null");
+        }
+        if (format != Format.JSON && compression == Compression.NONE) {
+            throw new IllegalArgumentException("Format " + format + " must be compressed;  uncompressed "
+                    + "binary values are larger than JSON text once Base64-encoded");
+        }
+        this.format = format;
+        this.compression = compression;
+        this.header = isPlainText()
+                ? null
+                : HEADER_PREFIX + format.name().toLowerCase(Locale.ROOT)
+                        + (compression != Compression.NONE
+                                ? HEADER_SEPARATOR + compression.name().toLowerCase(Locale.ROOT)
+                                : "")
+                        + HEADER_TERMINATOR;
+    }
+
+    /**
+     * The codec used for writing JSON columns.
+     */
+    public static JsonStorageCodec getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(JsonStorageCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Argument 'codec' cannot be null");
+        }
+        current = codec;
+    }
+
+    /**
+     * Reads a value written by any codec (including plain JSON text).
+     */
+    public static JsonNode decode(String dbData) {
+
+        if (isPlainText(dbData)) {
+            try {
+                return Format.JSON.objectMapper.readTree(dbData);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read the specified String into JSON:  " + dbData, e);
+            }
+        }
+
+        try (JsonParser parser = createBinaryParser(dbData)) {
+            return parser.readValueAsTree();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to decode the specified JSON storage value:  " + dbData, e);
+        }
+
+    }
+
+    /**
+     * Writes a value written by any codec (including plain JSON text) to the specified generator
+     * without building a <code>JsonNode</code> tree.
+     */
+    public static void transcode(String dbData, JsonGenerator generator) throws IOException {
+        if (isPlainText(dbData)) {
+            generator.writeRawValue(dbData);
+        } else {
+            try (JsonParser parser = createBinaryParser(dbData)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public String encode(JsonNode node) {
+
+        if (isPlainText()) {
+            try {
+                return format.objectMapper.writeValueAsString(node);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write the specified JSON to a String:  " + node, e);
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream otpt = compress(bytes, compression)) {
+            format.objectMapper.writeValue(otpt, node);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to encode the specified JSON:  " + node, e);
+        }
+        return header + Base64.getEncoder().encodeToString(bytes.toByteArray());
+
+    }
+
+    /**
+     * Indicates whether the specified value was written by this codec (in which case there is no
+     * benefit in re-encoding it).
+     */
+    public boolean isEncodedWith(String dbData) {
+        return isPlainText()
+                ? isPlainText(dbData)
+                : dbData.startsWith(header);
+    }
+
+    @Override
+    public String toString() {
+        return "JsonStorageCodec{" +
+                "format=" + format +
+                ", compression=" + compression +
+                '}';
+    }
+
+    /*
+     * Implementation
+     */
+
+    private boolean isPlainText() {
+        return format == Format.JSON && compression == Compression.NONE;
+    }
+
+    private static boolean isPlainText(String dbData) {
+        return dbData.isEmpty() || dbData.charAt(0) != HEADER_PREFIX;
+    }
+
+    private static JsonParser createBinaryParser(String dbData) throws IOException {
+
+        final int terminatorIndex = dbData.indexOf(HEADER_TERMINATOR);
+        if (terminatorIndex == -1) {
+            throw new IOException("Invalid JSON storage header:  " + dbData);
+        }
+        final String[] tokens = dbData.substring(1, terminatorIndex).split("\\" + HEADER_SEPARATOR);
+        final Format format = Format.valueOf(tokens[0].toUpperCase(Locale.ROOT));
+        final Compression compression = tokens.length > 1
+                ? Compression.valueOf(tokens[1].toUpperCase(Locale.ROOT))
+                : Compression.NONE;
+
+        final byte[] bytes = Base64.getDecoder().decode(dbData.substring(terminatorIndex + 1));
+        final JsonParser rslt = format.objectMapper.getFactory()
+                .createParser(decompress(new ByteArrayInputStream(bytes), compression));
+        rslt.setCodec(format.objectMapper);
+        return rslt;
+
+    }
+
+    private static OutputStream compress(OutputStream otpt, Compression compression) throws IOException {
+        switch (compression) {
+            case DEFLATE:
+                return new DeflaterOutputStream(otpt);
+            case LZ4:
+                return new LZ4FrameOutputStream(otpt);
+            default:
+                return otpt;
+        }
+    }
+
+    private static InputStream decompress(InputStream inpt, Compression compression) throws IOException {
+        switch (compression) {
+            case DEFLATE:
+                return new InflaterInputStream(inpt);
+            case LZ4:
+                return new LZ4FrameInputStream(inpt);
+            default:
+                return inpt;
+        }
+    }
+
+}
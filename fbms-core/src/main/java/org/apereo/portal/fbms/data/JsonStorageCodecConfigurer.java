@@ -0,0 +1,52 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+
+/**
+ * Selects the {@link JsonStorageCodec} used for writing JSON columns, based on configuration.
+ */
+@Component
+public class JsonStorageCodecConfigurer {
+
+    @Value("${org.apereo.portal.fbms.storage.format:json}")
+    private String format;
+
+    @Value("${org.apereo.portal.fbms.storage.compression:none}")
+    private String compression;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        final JsonStorageCodec codec = new JsonStorageCodec(
+                JsonStorageCodec.Format.valueOf(format.trim().toUpperCase(Locale.ROOT)),
+                JsonStorageCodec.Compression.valueOf(compression.trim().toUpperCase(Locale.ROOT)));
+        JsonStorageCodec.setCurrent(codec);
+        logger.info("JSON columns will be written with {}", codec);
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Converts existing JSON columns to the current {@link JsonStorageCodec} in the background, while
+ * the application is running.  Rows are read in chunks in primary key order (keyset pagination)
+ * and each chunk is rewritten in its own short transaction, so the migration can be interrupted
+ * (e.g. by a restart) and resumed at any time.  Rows that are already encoded with the current
+ * codec are skipped.  Forms and submissions are never modified in place by FBMS, so rewriting a
+ * row cannot lose a concurrent change.
+ *
+ * <p>When deduplication is enabled, form schemas and metadata that are still stored inline are
+ * moved to the {@link JsonContentStore} as well.  References are never rewritten;  the content
+ * they refer to is migrated in FBMS_JSON_CONTENT.
+ */
+@Component
+public class JsonStorageMigrator {
+
+    private static final List<MigratedTable> TABLES = Arrays.asList(
+            new MigratedTable("FBMS_FORM",
+                    Arrays.asList("FORM_FNAME", "FORM_VERSION"),
+                    Arrays.asList("FORM_SCHEMA", "FORM_METADATA"),
+                    true),
+            new MigratedTable("FBMS_JSON_CONTENT",
+                    Arrays.asList("HASH"),
+                    Arrays.asList("CONTENT"),
+                    false),
+            new MigratedTable("FBMS_SUBMISSION",
+                    Arrays.asList("USERNAME", "FORM_FNAME", "FORM_VERSION", "TIMESTAMP"),
+                    Arrays.asList("ANSWERS"),
+                    false)
+    );
+
+    @Value("${org.apereo.portal.fbms.storage.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${org.apereo.portal.fbms.storage.migration.chunkSize:500}")
+    private int chunkSize;
+
+    /**
+     * Pause between chunks, to limit the load the migration places on the database.
+     */
+    @Value("${org.apereo.portal.fbms.storage.migration.pauseMillis:100}")
+    private long pauseMillis;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JsonContentStore jsonContentStore;
+
+    private final LobHandler lobHandler = new DefaultLobHandler();
+
+    private volatile boolean running;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        final Thread thread = new Thread(this::migrate, "fbms-storage-migrator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /*
+     * Nested Types
+     */
+
+    private static final class MigratedTable {
+
+        private final String name;
+        private final List<String> keyColumns;
+        private final List<String> valueColumns;
+        private final boolean deduplicated;
+
+        private MigratedTable(String name, List<String> keyColumns, List<String> valueColumns,
+                boolean deduplicated) {
+            this.name = name;
+            this.keyColumns = keyColumns;
+            this.valueColumns = valueColumns;
+            this.deduplicated = deduplicated;
+        }
+
+        private String selectSql(boolean first) {
+            final StringBuilder rslt = new StringBuilder("SELECT ")
+                    .append(String.join(", ", keyColumns)).append(", ")
+                    .append(String.join(", ", valueColumns))
+                    .append(" FROM ").append(name);
+            if (!first) {
+                // Keyset predicate:  (k1 > ?) OR (k1 = ? AND k2 > ?) OR ...
+                final List<String> disjuncts = new ArrayList<>();
+                for (int i = 0; i < keyColumns.size(); i++) {
+                    final StringBuilder disjunct = new StringBuilder("(");
+                    for (int j = 0; j < i; j++) {
+                        disjunct.append(keyColumns.get(j)).append(" = ? AND ");
+                    }
+                    disjuncts.add(disjunct.append(keyColumns.get(i)).append(" > ?)").toString());
+                }
+                rslt.append(" WHERE ").append(String.join(" OR ", disjuncts));
+            }
+            return rslt.append(" ORDER BY ").append(String.join(", ", keyColumns)).toString();
+        }
+
+        private Object[] selectParameters(Object[] lastKey) {
+            final List<Object> rslt = new ArrayList<>();
+            for (int i = 0; i < keyColumns.size(); i++) {
+                rslt.addAll(Arrays.asList(lastKey).subList(0, i + 1));
+            }
+            return rslt.toArray();
+        }
+
+        private String updateSql() {
+            return "UPDATE " + name + " SET "
+                    + valueColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(", "))
+                    + " WHERE "
+                    + keyColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(" AND "));
+        }
+
+    }
+
+    private static final class Row {
+
+        private final Object[] key;
+        private final String[] values;
+
+        private Row(Object[] key, String[] values) {
+            this.key = key;
+            this.values = values;
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void migrate() {
+        final JsonStorageCodec codec = JsonStorageCodec.getCurrent();
+        logger.info("Migrating JSON columns to {}", codec);
+        try {
+            for (MigratedTable table : TABLES) {
+                migrateTable(table, codec);
+            }
+        } catch (RuntimeException e) {
+            logger.error("The JSON storage migration failed;  it will resume at the next restart", e);
+        } finally {
+            running = false;
+        }
+    }
+
+    private void migrateTable(MigratedTable table, JsonStorageCodec codec) {
+
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setMaxRows(chunkSize);
+        jdbcTemplate.setFetchSize(chunkSize);
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        final int keyCount = table.keyColumns.size();
+        final int valueCount = table.valueColumns.size();
+        long examined = 0L;
+        long converted = 0L;
+
+        Object[] lastKey = null;
+        while (running) {
+
+            final List<Row> chunk = lastKey == null
+                    ? jdbcTemplate.query(table.selectSql(true), (rs, rowNum) -> readRow(rs, keyCount, valueCount))
+                    : jdbcTemplate.query(table.selectSql(false), table.selectParameters(lastKey),
+                            (rs, rowNum) -> readRow(rs, keyCount, valueCount));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            lastKey = chunk.get(chunk.size() - 1).key;
+            examined += chunk.size();
+
+            final List<Row> stale = chunk.stream()
+                    .filter(row -> Arrays.stream(row.values).anyMatch(v -> isStale(v, table, codec)))
+                    .collect(Collectors.toList());
+            if (!stale.isEmpty()) {
+                // Converted outside the update transaction;  the JsonContentStore commits on its own
+                final List<Row> rewritten = stale.stream()
+                        .map(row -> convert(row, table, codec))
+                        .collect(Collectors.toList());
+                transactionTemplate.execute(status -> {
+                    try (LobCreator lobCreator = lobHandler.getLobCreator()) {
+                        return jdbcTemplate.batchUpdate(table.updateSql(), rewritten, rewritten.size(), (ps, row) -> {
+                            for (int i = 0; i < valueCount; i++) {
+                                lobCreator.setClobAsString(ps, i + 1, row.values[i]);
+                            }
+                            for (int i = 0; i < keyCount; i++) {
+                                ps.setObject(valueCount + i + 1, row.key[i]);
+                            }
+                        });
+                    }
+                });
+                converted += stale.size();
+            }
+
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+        }
+
+        logger.info("Examined {} row(s) of {} and converted {}{}", examined, table.name, converted,
+                running ? "" : " (interrupted)");
+
+    }
+
+    private boolean isStale(String value, MigratedTable table, JsonStorageCodec codec) {
+        if (value == null || JsonContentStore.isReference(value)) {
+            return false;
+        }
+        return (table.deduplicated && jsonContentStore.isEnabled()) || !codec.isEncodedWith(value);
+    }
+
+    private Row convert(Row row, MigratedTable table, JsonStorageCodec codec) {
+        final String[] values = new String[row.values.length];
+        for (int i = 0; i < values.length; i++) {
+            final String value = row.values[i];
+            if (!isStale(value, table, codec)) {
+                values[i] = value;
+            } else if (table.deduplicated && jsonContentStore.isEnabled()) {
+                values[i] = jsonContentStore.store(JsonStorageCodec.decode(value));
+            } else {
+                values[i] = codec.encode(JsonStorageCodec.decode(value));
+            }
+        }
+        return new Row(row.key, values);
+    }
+
+    private Row readRow(ResultSet rs, int keyCount, int valueCount) throws SQLException {
+        final Object[] key = new Object[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            key[i] = rs.getObject(i + 1);
+        }
+        final String[] values = new String[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            values[i] = lobHandler.getClobAsString(rs, keyCount + i + 1);
+        }
+        return new Row(key, values);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent version of each {@link FormEntity} in memory, keyed by fname.  Forms change
+ * rarely but are read on nearly every portal page view, so most reads should never reach the
+ * database.  Components that save forms must call {@link #update(FormEntity)} (write-through).
+ *
+ * <p>The <code>FormEntity</code> objects returned by this bean are shared between threads and
+ * requests;  callers must not modify them.  Use {@link FormEntity#deepCopy()} to obtain an
+ * instance that may be modified safely.
+ *
+ * <p>Each node has its own cache, and nothing invalidates it across nodes.  Cached forms are
+ * checked against the {@link FormVersionRegistry}, which learns about versions saved by other nodes
+ * in the cluster only when it reconciles with FBMS_FORM_HEAD (every minute by default).  A node
+ * may therefore serve a stale form for up to the lesser of the reconcile interval and the
+ * time-to-live after another node has saved a newer version.  A maximum weight of zero disables
+ * the cache.
+ */
+@Component
+public class LatestFormCache {
+
+    private static final String CACHE_NAME = "latestForms";
+
+    /**
+     * Approximate upper bound on the JSON (in characters) of all cached forms.
+     */
+    @Value("${org.apereo.portal.fbms.cache.forms.maximumWeight:20000000}")
+    private long maximumWeight;
+
+    @Value("${org.apereo.portal.fbms.cache.forms.timeToLiveSeconds:60}")
+    private long timeToLiveSeconds;
+
+    @Autowired
+    private FormRepository formRepository;
+
+    @Autowired
+    private FormVersionRegistry formVersionRegistry;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private BoundedCache<String,FormEntity> cache;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        cache = new BoundedCache<>(CACHE_NAME, maximumWeight,
+                TimeUnit.SECONDS.toMillis(timeToLiveSeconds), LatestFormCache::weigh);
+        if (meterRegistry != null) {
+            cache.bindTo(meterRegistry);
+        }
+        logger.info("Initialized the latest form cache:  {}", cache);
+    }
+
+    /**
+     * Obtains the most recent version of the form with the specified fname, or <code>null</code>
+     * if there is no such form.  The result is shared and must not be modified.
+     */
+    public FormEntity getLatest(String fname) {
+        final FormEntity cached = cache.get(fname);
+        if (cached != null) {
+            // Another node may have saved a newer version
+            final Integer currentVersion = formVersionRegistry.getCurrentVersion(fname);
+            if (currentVersion == null || cached.getId().getVersion() >= currentVersion) {
+                return cached;
+            }
+            logger.debug("Discarding version {} of form '{}';  the current version is {}",
+                    cached.getId().getVersion(), fname, currentVersion);
+        }
+        final FormEntity loaded = formRepository.findCurrentByFname(fname);
+        if (loaded == null) {
+            return null;
+        }
+        // A concurrent update() may have stored a newer version while we were loading
+        return cache.merge(fname, loaded, LatestFormCache::newer);
+    }
+
+    /**
+     * Obtains the most recent version number of the form with the specified fname, or
+     * <code>null</code> if there is no such form, without loading the form itself.
+     */
+    public Integer getLatestVersion(String fname) {
+        return formVersionRegistry.getCurrentVersion(fname);
+    }
+
+    /**
+     * Records a form that has just been saved.  Has no effect if a newer version of the same form
+     * is already cached.  The cache keeps its own copy, so the caller may continue to use (and
+     * modify) the specified form.
+     *
+     * @return The form that was passed in (for convenience)
+     */
+    public FormEntity update(FormEntity form) {
+        if (form != null) {
+            formVersionRegistry.update(form.getId().getFname(), form.getId().getVersion());
+            cache.merge(form.getId().getFname(), form.deepCopy(), LatestFormCache::newer);
+        }
+        return form;
+    }
+
+    /**
+     * Discards the cached form (if any) with the specified fname.
+     */
+    public void evict(String fname) {
+        cache.invalidate(fname);
+    }
+
+    /**
+     * Exposes the underlying cache, which provides size and hit/miss/eviction statistics.
+     */
+    public BoundedCache<String,FormEntity> getCache() {
+        return cache;
+    }
+
+    /*
+     * Implementation
+     */
+
+    private static FormEntity newer(FormEntity existing, FormEntity candidate) {
+        return candidate.getId().getVersion() >= existing.getId().getVersion()
+                ? candidate
+                : existing;
+    }
+
+    /**
+     * Forms are weighed by the length of their JSON, which is an adequate proxy for the memory they
+     * occupy.  This method is invoked only when a form enters the cache.
+     */
+    private static long weigh(FormEntity form) {
+        long rslt = form.getId().getFname().length();
+        if (form.getStoredSchema() != null) {
+            rslt += form.getStoredSchema().estimateSize();
+        }
+        if (form.getStoredMetadata() != null) {
+            rslt += form.getStoredMetadata().estimateSize();
+        }
+        return rslt;
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps each user's most recent {@link SubmissionEntity} to each form in memory, keyed by
+ * (username, fname).  Users of pre-filled forms re-read their own submission on every visit, so
+ * most of those reads should never reach the database.  Components that save submissions must call
+ * {@link #update(SubmissionEntity)} (write-through).
+ *
+ * <p>The <code>SubmissionEntity</code> objects returned by this bean are shared between threads
+ * and requests;  callers must not modify them.  Use {@link SubmissionEntity#deepCopy()} to obtain
+ * an instance that may be modified safely.
+ *
+ * <p>Each node has its own cache, and nothing invalidates it across nodes:  a submission saved on
+ * one node in a cluster is not seen by another node that has already cached an older submission
+ * until that entry expires.  The cache therefore assumes a single node, or a load balancer that
+ * keeps each user on the same node (session affinity);  the time-to-live (short by default) bounds
+ * how long a node may serve a stale submission otherwise.  A maximum weight of zero disables the
+ * cache.
+ */
+@Component
+public class LatestSubmissionCache {
+
+    private static final String CACHE_NAME = "latestSubmissions";
+
+    /**
+     * Approximate upper bound on the JSON (in characters) of all cached submissions.
+     */
+    @Value("${org.apereo.portal.fbms.cache.submissions.maximumWeight:20000000}")
+    private long maximumWeight;
+
+    @Value("${org.apereo.portal.fbms.cache.submissions.timeToLiveSeconds:30}")
+    private long timeToLiveSeconds;
+
+    @Autowired
+    private SubmissionRepository submissionRepository;
+
+    @Autowired
+    private SubmissionWriter submissionWriter;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private BoundedCache<Key,SubmissionEntity> cache;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        cache = new BoundedCache<>(CACHE_NAME, maximumWeight,
+                TimeUnit.SECONDS.toMillis(timeToLiveSeconds), LatestSubmissionCache::weigh);
+        if (meterRegistry != null) {
+            cache.bindTo(meterRegistry);
+        }
+        // Stop serving queued submissions that could not be written
+        submissionWriter.addFailureListener(this::discard);
+        logger.info("Initialized the latest submission cache:  {}", cache);
+    }
+
+    /**
+     * Obtains the most recent submission by the specified user to the form with the specified
+     * fname, or <code>null</code> if there is no such submission.  The result is shared and must
+     * not be modified.
+     */
+    public SubmissionEntity getLatest(String username, String fname) {
+        // Submissions waiting for write-behind are newer than anything in the database
+        final SubmissionEntity pending = submissionWriter.getPending(username, fname);
+        if (pending != null) {
+            return pending;
+        }
+        final Key key = new Key(username, fname);
+        final SubmissionEntity cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final SubmissionEntity loaded =
+                submissionRepository.findFirstByIdUsernameAndIdFnameOrderByIdTimestampDesc(username, fname);
+        if (loaded == null) {
+            return null;
+        }
+        // A concurrent update() may have stored a newer submission while we were loading
+        return cache.merge(key, loaded, LatestSubmissionCache::newer);
+    }
+
+    /**
+     * Obtains the most recent submission by the specified user to the form with the specified
+     * fname if it is already in memory, or <code>null</code> if it isn't.  Never queries the
+     * database.  The result is shared and must not be modified.
+     */
+    public SubmissionEntity getIfPresent(String username, String fname) {
+        final SubmissionEntity pending = submissionWriter.getPending(username, fname);
+        return pending != null ? pending : cache.get(new Key(username, fname));
+    }
+
+    /**
+     * Records a submission that has just been saved.  Has no effect if a newer submission by the
+     * same user to the same form is already cached.  The cache keeps its own copy, so the caller
+     * may continue to use (and modify) the specified submission.
+     *
+     * @return The submission that was passed in (for convenience)
+     */
+    public SubmissionEntity update(SubmissionEntity submission) {
+        if (submission != null) {
+            final Key key = new Key(submission.getId().getUsername(), submission.getId().getFname());
+            cache.merge(key, submission.deepCopy(), LatestSubmissionCache::newer);
+        }
+        return submission;
+    }
+
+    /**
+     * Discards the cached submission (if any) by the specified user to the form with the specified
+     * fname.
+     */
+    public void evict(String username, String fname) {
+        cache.invalidate(new Key(username, fname));
+    }
+
+    /**
+     * Discards the cached submission by the same user to the same form, if it is the specified one
+     * (e.g. because it could not be written).
+     */
+    public void discard(SubmissionEntity submission) {
+        final SubmissionIdentifier id = submission.getId();
+        cache.invalidate(new Key(id.getUsername(), id.getFname()),
+                cached -> Objects.equals(cached.getId(), id));
+    }
+
+    /**
+     * Exposes the underlying cache, which provides size and hit/miss/eviction statistics.
+     */
+    public BoundedCache<?,SubmissionEntity> getCache() {
+        return cache;
+    }
+
+    /*
+     * Nested Types
+     */
+
+    /* package-private */ static final class Key {
+
+        private final String username;
+        private final String fname;
+
+        /* package-private */ Key(String username, String fname) {
+            this.username = username;
+            this.fname = fname;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return Objects.equals(username, that.username) &&
+                    Objects.equals(fname, that.fname);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, fname);
+        }
+
+        @Override
+        public String toString() {
+            return username + "/" + fname;
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    /* package-private */ static SubmissionEntity newer(SubmissionEntity existing, SubmissionEntity candidate) {
+        return candidate.getId().getTimestamp().getTime() >= existing.getId().getTimestamp().getTime()
+                ? candidate
+                : existing;
+    }
+
+    /**
+     * Submissions are weighed by the length of their JSON.  This method is invoked only when a
+     * submission enters the cache.
+     */
+    private static long weigh(SubmissionEntity submission) {
+        long rslt = submission.getId().getUsername().length() + submission.getId().getFname().length();
+        if (submission.getStoredAnswers() != null) {
+            rslt += submission.getStoredAnswers().estimateSize();
+        }
+        return rslt;
+    }
+
+}
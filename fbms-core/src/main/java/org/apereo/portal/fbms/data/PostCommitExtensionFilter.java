@@ -0,0 +1,48 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+/**
+ * Provide an implementation of this interface to perform side effects (notifications, copying data
+ * to other systems, etc.) after an entity has been created or updated, without adding their
+ * latency to the response.  Unlike an {@link ExtensionFilter}, a post-commit filter runs on a
+ * background thread once the repository operation has completed (and its transaction, if any, has
+ * committed), so it cannot change the entity or the response, nor cancel the operation.
+ *
+ * <p>A filter that throws an exception is retried (a limited number of times) by the
+ * {@link PostCommitFilterExecutor}.  Work that must not be repeated should be idempotent.  The
+ * entity is shared by all post-commit filters for the same operation;  filters must not modify it.
+ *
+ * <p>When write-behind persistence of submissions is enabled, post-commit filters run as soon as a
+ * submission has been accepted (queued), which may be shortly before it is written.
+ */
+public interface PostCommitExtensionFilter<E extends FbmsEntity> {
+
+    /**
+     * Indicates whether this filter applies to the specified operation.  Invoked on the request
+     * thread.
+     */
+    boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, RequestSnapshot request);
+
+    /**
+     * Invoked on a background thread with the entity that was saved.
+     */
+    void afterCommit(E entity, RequestSnapshot request) throws Exception;
+
+}
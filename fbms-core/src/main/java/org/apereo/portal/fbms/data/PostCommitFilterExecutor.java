@@ -0,0 +1,233 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs {@link PostCommitExtensionFilter} beans on a bounded pool of background threads.  Each
+ * applicable filter is a separate task, so a slow or failing filter does not hold up the others.
+ * A task that fails is retried after a delay that grows with each attempt.  When the queue is full,
+ * tasks are rejected (and counted) rather than slowing down requests.
+ *
+ * <p>Outcomes are counted by the <code>fbms.filters.postCommit</code> metric, tagged with the
+ * filter and the outcome (<code>succeeded</code>, <code>retried</code>, <code>failed</code>, or
+ * <code>rejected</code>).
+ */
+@Component
+public class PostCommitFilterExecutor {
+
+    private static final String METRIC_NAME = "fbms.filters.postCommit";
+
+    @Value("${org.apereo.portal.fbms.filters.postCommit.threads:4}")
+    private int threads;
+
+    @Value("${org.apereo.portal.fbms.filters.postCommit.queueCapacity:1000}")
+    private int queueCapacity;
+
+    /**
+     * Total attempts per task, including the first.
+     */
+    @Value("${org.apereo.portal.fbms.filters.postCommit.maxAttempts:3}")
+    private int maxAttempts;
+
+    /**
+     * Delay before the first retry;  each subsequent retry waits this much longer.
+     */
+    @Value("${org.apereo.portal.fbms.filters.postCommit.retryDelayMillis:1000}")
+    private long retryDelayMillis;
+
+    @Value("${org.apereo.portal.fbms.filters.postCommit.drainTimeoutSeconds:30}")
+    private long drainTimeoutSeconds;
+
+    private List<PostCommitExtensionFilter> filters;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired(required = false)
+    public void setFilters(List<PostCommitExtensionFilter> filters) {
+        this.filters = filters;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (filters == null || filters.isEmpty()) {
+            filters = Collections.emptyList();
+            return; // No threads needed
+        }
+        logger.info("Found the following PostCommitExtensionFilter beans:  {}", filters);
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "fbms-post-commit-" + threadNumber.incrementAndGet()));
+
+        if (meterRegistry != null) {
+            Gauge.builder(METRIC_NAME + ".queued", executor.getQueue(), BlockingQueue::size)
+                    .description("The number of post-commit filter tasks waiting to run")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                logger.error("Shutting down with {} post-commit filter task(s) not yet run",
+                        executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules the applicable filters to run with the specified (saved) entity.  If a transaction
+     * is active, they are scheduled when it commits (and not at all if it rolls back);  otherwise
+     * they are scheduled immediately.
+     */
+    public void dispatch(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+
+        final Runnable task = prepare(metadata, entity, request);
+        if (task == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+
+    }
+
+    /**
+     * Selects the filters that apply to the specified entity (while the request is still available)
+     * and returns a task that schedules them, or <code>null</code> if none apply.  For entities that
+     * are saved later (e.g. by the {@link SubmissionWriter}), the caller runs the task once the
+     * entity has been saved.
+     */
+    public Runnable prepare(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+
+        if (filters.isEmpty() || entity == null) {
+            return null;
+        }
+
+        final RequestSnapshot snapshot = RequestSnapshot.of(request);
+        final List<PostCommitExtensionFilter> applicable = filters.stream()
+                .filter(filter -> filter.appliesTo(metadata, entity, snapshot))
+                .collect(Collectors.toList());
+        if (applicable.isEmpty()) {
+            return null;
+        }
+
+        return () -> applicable.forEach(filter -> submit(filter, entity, snapshot));
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void submit(PostCommitExtensionFilter filter, FbmsEntity entity, RequestSnapshot snapshot) {
+        try {
+            executor.execute(() -> run(filter, entity, snapshot));
+        } catch (RejectedExecutionException e) {
+            count(filter, "rejected");
+            logger.error("Post-commit filter {} was not run for {} (queue full or shutting down)", filter, snapshot);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(PostCommitExtensionFilter filter, FbmsEntity entity, RequestSnapshot snapshot) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                filter.afterCommit(entity, snapshot);
+                count(filter, "succeeded");
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    count(filter, "failed");
+                    logger.error("Post-commit filter {} failed {} time(s) for {};  giving up",
+                            filter, attempt, snapshot, e);
+                    return;
+                }
+                count(filter, "retried");
+                logger.warn("Post-commit filter {} failed (attempt {} of {}) for {};  will retry:  {}",
+                        filter, attempt, maxAttempts, snapshot, e.toString());
+            }
+            try {
+                Thread.sleep(retryDelayMillis * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                count(filter, "failed");
+                logger.error("Post-commit filter {} was interrupted before retrying for {}", filter, snapshot);
+                return;
+            }
+        }
+    }
+
+    private void count(PostCommitExtensionFilter filter, String outcome) {
+        if (meterRegistry != null) {
+            Counter.builder(METRIC_NAME)
+                    .description("The outcomes of post-commit filter tasks")
+                    .tag("filter", filter.getClass().getSimpleName())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An immutable copy of the parts of an <code>HttpServletRequest</code> (and of the user who sent
+ * it) that remain meaningful after the request has completed.  Work that outlives the request (see
+ * {@link PostCommitExtensionFilter}) receives one of these instead of the request itself, which the
+ * container recycles.
+ */
+public final class RequestSnapshot {
+
+    private final String method;
+    private final String requestUri;
+    private final String remoteAddr;
+    private final String username;
+    private final Set<String> groups;
+    private final Map<String,List<String>> headers;
+
+    private RequestSnapshot(HttpServletRequest request, Authentication authentication) {
+        this.method = request.getMethod();
+        this.requestUri = request.getRequestURI();
+        this.remoteAddr = request.getRemoteAddr();
+
+        if (authentication != null && authentication.getPrincipal() instanceof String) {
+            this.username = (String) authentication.getPrincipal();
+            final Set<String> groupSet = new TreeSet<>();
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                groupSet.add(authority.getAuthority());
+            }
+            this.groups = Collections.unmodifiableSet(groupSet);
+        } else {
+            this.username = null;
+            this.groups = Collections.emptySet();
+        }
+
+        final Map<String,List<String>> headerMap = new TreeMap<>();
+        if (request.getHeaderNames() != null) {
+            for (String name : Collections.list(request.getHeaderNames())) {
+                headerMap.put(name.toLowerCase(Locale.ROOT),
+                        Collections.unmodifiableList(new ArrayList<>(Collections.list(request.getHeaders(name)))));
+            }
+        }
+        this.headers = Collections.unmodifiableMap(headerMap);
+    }
+
+    /**
+     * Captures the specified request, and the user identified by the
+     * <code>SecurityContextHolder</code> of the current thread.
+     */
+    public static RequestSnapshot of(HttpServletRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("Argument 'request' cannot be null");
+        }
+        return new RequestSnapshot(request, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRequestUri() {
+        return requestUri;
+    }
+
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    /**
+     * The username of the user who sent the request, or <code>null</code> if the user was not
+     * identified.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Returns the first value of the specified header (ignoring case), or <code>null</code>.
+     */
+    public String getHeader(String name) {
+        final List<String> values = getHeaders(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    public List<String> getHeaders(String name) {
+        final List<String> rslt = headers.get(name.toLowerCase(Locale.ROOT));
+        return rslt != null ? rslt : Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestSnapshot{" +
+                "method='" + method + '\'' +
+                ", requestUri='" + requestUri + '\'' +
+                ", username='" + username + '\'' +
+                '}';
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.IOException;
+
+/**
+ * Holds a JSON column value as it was read from the database and builds the <code>JsonNode</code>
+ * tree only when something asks for it.  Values that are never materialized are written to JSON
+ * output directly from their stored representation (see {@link #toJsonNode()}).
+ *
+ * <p>Once the tree has been materialized, it is the source of truth:  callers may modify it, and
+ * {@link #encode()} reflects those changes.  A value that was only read is written back exactly as
+ * it was stored, whatever the current {@link JsonStorageCodec}, so that reading it never causes an
+ * <code>UPDATE</code>.  The exception is a value that refers to content in
+ * the {@link JsonContentStore}, which is immutable;  it is always written back as the reference.
+ */
+public final class StoredJson implements JsonSerializable {
+
+    private final String encoded;
+    private volatile JsonNode tree;
+
+    private StoredJson(String encoded, JsonNode tree) {
+        this.encoded = encoded;
+        this.tree = tree;
+    }
+
+    /**
+     * Wraps a value read from the database (any {@link JsonStorageCodec}), or returns
+     * <code>null</code> if there is no value.
+     */
+    public static StoredJson ofEncoded(String encoded) {
+        return encoded != null && !encoded.trim().isEmpty()
+                ? new StoredJson(encoded, null)
+                : null;
+    }
+
+    /**
+     * Wraps a tree, or returns <code>null</code> if the tree is <code>null</code>.
+     */
+    public static StoredJson of(JsonNode tree) {
+        return tree != null
+                ? new StoredJson(null, tree)
+                : null;
+    }
+
+    /**
+     * Wraps a tree that has been written to the {@link JsonContentStore} under the specified
+     * reference.
+     */
+    public static StoredJson ofReference(String reference, JsonNode tree) {
+        if (!JsonContentStore.isReference(reference)) {
+            throw new IllegalArgumentException("Not a JSON content reference:  " + reference);
+        }
+        return new StoredJson(reference, tree);
+    }
+
+    /**
+     * Obtains the tree, building it from the stored representation on first access.
+     */
+    public JsonNode get() {
+        JsonNode rslt = tree;
+        if (rslt == null) {
+            rslt = JsonStorageCodec.decode(stored());
+            tree = rslt;
+        }
+        return rslt;
+    }
+
+    public boolean isMaterialized() {
+        return tree != null;
+    }
+
+    /**
+     * Indicates whether the value is held in the {@link JsonContentStore}.
+     */
+    public boolean isReference() {
+        return JsonContentStore.isReference(encoded);
+    }
+
+    /**
+     * Obtains the representation to store in the database:  the stored representation, unless
+     * the value never came from the database or its tree has been modified, in which case the
+     * tree written with the current {@link JsonStorageCodec}.
+     */
+    public String encode() {
+        final JsonNode current = tree;
+        if (current == null || isReference()) {
+            return encoded;
+        }
+        if (encoded != null && current.equals(JsonStorageCodec.decode(encoded))) {
+            // Materialized but unmodified
+            return encoded;
+        }
+        return JsonStorageCodec.getCurrent().encode(current);
+    }
+
+    /**
+     * Approximate size of the value (in characters), without materializing it.  A reference counts
+     * only its own length;  the content it refers to is held (and weighed) by the
+     * {@link JsonContentStore}.
+     */
+    public int estimateSize() {
+        final JsonNode current = tree;
+        return encoded != null
+                ? encoded.length()
+                : current.toString().length();
+    }
+
+    /**
+     * Identifies the content exactly (by SHA-256) without materializing it:  a value that has not
+     * been materialized is identified by its stored representation (a reference is its own
+     * digest), one that has been (and may have been modified) by its JSON text.  Equal content
+     * may have different digests if it is stored differently.
+     */
+    public String digest() {
+        final JsonNode current = tree;
+        if (current != null) {
+            return JsonContentStore.hash(current.toString());
+        }
+        return isReference()
+                ? encoded
+                : JsonContentStore.hash(encoded);
+    }
+
+    /**
+     * Creates a copy that shares no mutable state with this one.
+     */
+    public StoredJson deepCopy() {
+        final JsonNode current = tree;
+        return current != null
+                ? new StoredJson(null, current.deepCopy())
+                : new StoredJson(encoded, null);
+    }
+
+    /**
+     * Provides a <code>JsonNode</code> suitable for JSON output:  the tree if it has been
+     * materialized, otherwise a node that writes the stored representation directly.  Nodes of the
+     * second kind cannot be navigated.
+     */
+    public JsonNode toJsonNode() {
+        final JsonNode current = tree;
+        return current != null
+                ? current
+                : JsonNodeFactory.instance.rawValueNode(new RawValue(this));
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        final JsonNode current = tree;
+        if (current != null) {
+            gen.writeTree(current);
+        } else {
+            JsonStorageCodec.transcode(stored(), gen);
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        serialize(gen, serializers);
+    }
+
+    /**
+     * Describes the value without materializing (or resolving) it;  use {@link #get()} for the
+     * JSON itself.
+     */
+    @Override
+    public String toString() {
+        return "StoredJson{" +
+                (encoded != null
+                        ? "header=" + header() + ", length=" + encoded.length()
+                        : "unsaved") +
+                ", materialized=" + isMaterialized() +
+                '}';
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * The codec header of the stored representation (e.g. <code>$smile+lz4:</code>), the whole
+     * reference if it is one, or <code>json</code> for plain JSON text.
+     */
+    private String header() {
+        if (isReference()) {
+            return encoded;
+        }
+        final int terminatorIndex = encoded.indexOf(':');
+        return encoded.charAt(0) == '$' && terminatorIndex != -1
+                ? encoded.substring(0, terminatorIndex + 1)
+                : "json";
+    }
+
+    /**
+     * The value as written by a {@link JsonStorageCodec}, following a reference if necessary.
+     */
+    private String stored() {
+        return isReference()
+                ? JsonContentStore.resolve(encoded)
+                : encoded;
+    }
+
+}
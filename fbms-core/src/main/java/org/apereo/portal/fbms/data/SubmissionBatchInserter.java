@@ -0,0 +1,129 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes {@link SubmissionEntity} objects to FBMS_SUBMISSION with JDBC batch inserts, bypassing
+ * the <code>EntityManager</code>.  Each batch is committed in a single transaction.  Intended for
+ * components that write many submissions at a time;  callers are responsible for validating the
+ * submissions and for keeping caches up to date.
+ */
+@Component
+public class SubmissionBatchInserter {
+
+    private static final String INSERT_SQL = "INSERT INTO FBMS_SUBMISSION "
+            + "(USERNAME, FORM_FNAME, FORM_VERSION, TIMESTAMP, ANSWERS) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final LobHandler lobHandler = new DefaultLobHandler();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Inserts the specified submissions in one batch and one transaction.  If the batch fails (e.g.
+     * because one row duplicates an existing key), the submissions are inserted one at a time so
+     * that only the offending ones are lost.
+     *
+     * @return A list the same size as <code>submissions</code>;  each element is
+     * <code>null</code> if the corresponding submission was written, or the failure if it wasn't
+     */
+    public List<RuntimeException> insert(List<SubmissionEntity> submissions) {
+
+        final List<RuntimeException> rslt = new ArrayList<>(Collections.nCopies(submissions.size(), null));
+        if (submissions.isEmpty()) {
+            return rslt;
+        }
+
+        try {
+            insertBatch(submissions);
+        } catch (RuntimeException e) {
+            if (submissions.size() == 1) {
+                rslt.set(0, e);
+            } else {
+                for (int i = 0; i < submissions.size(); i++) {
+                    try {
+                        insertBatch(Collections.singletonList(submissions.get(i)));
+                    } catch (RuntimeException re) {
+                        rslt.set(i, re);
+                    }
+                }
+            }
+        }
+
+        return rslt;
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void insertBatch(List<SubmissionEntity> submissions) {
+        transactionTemplate.execute(status -> {
+            try (LobCreator lobCreator = lobHandler.getLobCreator()) {
+                return jdbcTemplate.batchUpdate(INSERT_SQL, submissions, submissions.size(),
+                        (ps, submission) -> setValues(ps, submission, lobCreator));
+            }
+        });
+    }
+
+    private void setValues(PreparedStatement ps, SubmissionEntity submission, LobCreator lobCreator)
+            throws SQLException {
+        final SubmissionIdentifier id = submission.getId();
+        ps.setString(1, id.getUsername());
+        ps.setString(2, id.getFname());
+        ps.setInt(3, id.getVersion());
+        ps.setTimestamp(4, new Timestamp(id.getTimestamp().getTime()));
+        lobCreator.setClobAsString(ps, 5, submission.getStoredAnswers() != null
+                ? submission.getStoredAnswers().encode()
+                : null);
+    }
+
+}
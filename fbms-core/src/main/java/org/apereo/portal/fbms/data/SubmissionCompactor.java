@@ -0,0 +1,312 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes old submissions according to retention policies.  FBMS_SUBMISSION is append-only, but
+ * only the most recent submission of each user to each form is ever read;  older rows accumulate
+ * and slow down queries on the table.
+ *
+ * <p>A policy retains a submission if it is one of the <code>keepLatest</code> most recent
+ * submissions of that user to that form, <em>or</em> if it is less than <code>keepDays</code> days
+ * old (<code>0</code> means no age-based retention).  The most recent submission is always
+ * retained.  The default policy may be overridden for individual forms.
+ *
+ * <p>The job walks the (username, fname) pairs in order, one seek per pair in the
+ * FBMS_SUBMISSION_USER_FORM_IDX index (keyset pagination), so it never scans or sorts the whole
+ * table;  it pauses after every chunk of pairs.  Each pair is compacted as it is visited, in its own short transaction, so the job never
+ * holds locks for long and may be interrupted at any time.
+ * Running the job on several nodes at once is harmless (deletes are idempotent), though wasteful.
+ */
+@Component
+public class SubmissionCompactor {
+
+    private static final String NEXT_GROUP_JPQL = "SELECT s.id.username, s.id.fname FROM SubmissionEntity s " +
+            "%s ORDER BY s.id.username, s.id.fname";
+
+    /*
+     * The leading range condition lets the database seek to the key in the (USERNAME, FORM_FNAME,
+     * TIMESTAMP) index;  see SubmissionEntity.
+     */
+    private static final String KEYSET_PREDICATE = "WHERE s.id.username >= :username " +
+            "AND (s.id.username > :username OR s.id.fname > :fname)";
+
+    private static final String GROUP_PREDICATE = "WHERE s.id.username = :username AND s.id.fname = :fname";
+
+    @Value("${org.apereo.portal.fbms.submissions.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${org.apereo.portal.fbms.submissions.retention.keepLatest:1}")
+    private int keepLatest;
+
+    @Value("${org.apereo.portal.fbms.submissions.retention.keepDays:0}")
+    private int keepDays;
+
+    /**
+     * Comma-separated overrides of the default policy, in the form
+     * <code>fname:keepLatest:keepDays</code>.
+     */
+    @Value("${org.apereo.portal.fbms.submissions.retention.policies:}")
+    private String policies;
+
+    /**
+     * The number of (username, fname) pairs examined between pauses.
+     */
+    @Value("${org.apereo.portal.fbms.submissions.retention.chunkSize:100}")
+    private int chunkSize;
+
+    @Value("${org.apereo.portal.fbms.submissions.retention.pauseMillis:100}")
+    private long pauseMillis;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final LongAdder deletedCount = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+
+    private RetentionPolicy defaultPolicy;
+
+    private Map<String,RetentionPolicy> formPolicies;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Property 'chunkSize' must be at least 1");
+        }
+        defaultPolicy = new RetentionPolicy(keepLatest, keepDays);
+        formPolicies = parsePolicies(policies);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        if (meterRegistry != null) {
+            FunctionCounter.builder("fbms.submissions.retention.deleted", deletedCount, LongAdder::doubleValue)
+                    .description("The number of submissions deleted by retention policies")
+                    .register(meterRegistry);
+            FunctionCounter.builder("fbms.submissions.retention.reclaimed", reclaimedBytes, LongAdder::doubleValue)
+                    .description("The (approximate) size of the answers deleted by retention policies")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+
+        if (enabled) {
+            logger.info("Submission retention is enabled (default {}, overrides for {} form(s))",
+                    defaultPolicy, formPolicies.size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${org.apereo.portal.fbms.submissions.retention.intervalMillis:3600000}",
+            initialDelayString = "${org.apereo.portal.fbms.submissions.retention.intervalMillis:3600000}")
+    public void compact() {
+
+        if (!enabled) {
+            return;
+        }
+
+        final long deletedBefore = deletedCount.sum();
+        final long reclaimedBefore = reclaimedBytes.sum();
+        final long started = System.currentTimeMillis();
+
+        long visited = 0L;
+        for (String[] group = nextGroup(null); group != null; group = nextGroup(group)) {
+
+            compact(group[0], group[1]);
+
+            if (++visited % chunkSize == 0L) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+        }
+
+        logger.info("Submission retention deleted {} submission(s) ({} bytes) in {}ms",
+                deletedCount.sum() - deletedBefore, reclaimedBytes.sum() - reclaimedBefore,
+                System.currentTimeMillis() - started);
+
+    }
+
+    /*
+     * Nested Types
+     */
+
+    /* package-private */ static final class RetentionPolicy {
+
+        private final int keepLatest;
+        private final int keepDays;
+
+        /* package-private */ RetentionPolicy(int keepLatest, int keepDays) {
+            if (keepLatest < 1) {
+                throw new IllegalArgumentException("The most recent submission must be retained (keepLatest >= 1)");
+            }
+            if (keepDays < 0) {
+                throw new IllegalArgumentException("Argument 'keepDays' cannot be negative");
+            }
+            this.keepLatest = keepLatest;
+            this.keepDays = keepDays;
+        }
+
+        /* package-private */ int getKeepLatest() {
+            return keepLatest;
+        }
+
+        /**
+         * Submissions before this moment are not retained by age.
+         */
+        /* package-private */ Date getCutoff(long now) {
+            return new Date(now - TimeUnit.DAYS.toMillis(keepDays));
+        }
+
+        /**
+         * Submissions before this moment are deleted:  they are retained neither by age nor as one
+         * of the most recent.
+         *
+         * @param oldestKept The timestamp of the <code>keepLatest</code>-th most recent submission
+         */
+        /* package-private */ Date getThreshold(Date oldestKept, long now) {
+            final Date cutoff = getCutoff(now);
+            return cutoff.before(oldestKept) ? cutoff : oldestKept;
+        }
+
+        @Override
+        public String toString() {
+            return "RetentionPolicy{" +
+                    "keepLatest=" + keepLatest +
+                    ", keepDays=" + keepDays +
+                    '}';
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    /* package-private */ static Map<String,RetentionPolicy> parsePolicies(String policies) {
+        if (policies == null || policies.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String,RetentionPolicy> rslt = new HashMap<>();
+        for (String entry : policies.split(",")) {
+            final String[] tokens = entry.trim().split(":");
+            if (tokens.length != 3) {
+                throw new IllegalArgumentException("Invalid retention policy (expected fname:keepLatest:keepDays):  "
+                        + entry);
+            }
+            rslt.put(tokens[0].trim(),
+                    new RetentionPolicy(Integer.parseInt(tokens[1].trim()), Integer.parseInt(tokens[2].trim())));
+        }
+        return rslt;
+    }
+
+    /**
+     * The (username, fname) pair that follows the specified one in primary key order, or
+     * <code>null</code> if there are no more.
+     */
+    private String[] nextGroup(String[] lastGroup) {
+        final TypedQuery<Object[]> query = lastGroup == null
+                ? entityManager.createQuery(String.format(NEXT_GROUP_JPQL, ""), Object[].class)
+                : entityManager.createQuery(String.format(NEXT_GROUP_JPQL, KEYSET_PREDICATE), Object[].class)
+                        .setParameter("username", lastGroup[0])
+                        .setParameter("fname", lastGroup[1]);
+        final List<Object[]> rslt = query.setMaxResults(1).getResultList();
+        return !rslt.isEmpty()
+                ? new String[] { (String) rslt.get(0)[0], (String) rslt.get(0)[1] }
+                : null;
+    }
+
+    private void compact(String username, String fname) {
+
+        final RetentionPolicy policy = formPolicies.getOrDefault(fname, defaultPolicy);
+
+        // The oldest submission retained because it is one of the most recent
+        final List<Date> oldestKept = entityManager.createQuery("SELECT s.id.timestamp FROM SubmissionEntity s " +
+                GROUP_PREDICATE + " ORDER BY s.id.timestamp DESC", Date.class)
+                .setParameter("username", username)
+                .setParameter("fname", fname)
+                .setFirstResult(policy.getKeepLatest() - 1)
+                .setMaxResults(1)
+                .getResultList();
+        if (oldestKept.isEmpty()) {
+            return; // Not more than keepLatest submissions
+        }
+        final Date threshold = policy.getThreshold(oldestKept.get(0), System.currentTimeMillis());
+
+        transactionTemplate.execute(status -> {
+            final Object[] stats = entityManager.createQuery("SELECT COUNT(s), SUM(LENGTH(s.answersColumn)) " +
+                    "FROM SubmissionEntity s " + GROUP_PREDICATE + " AND s.id.timestamp < :threshold", Object[].class)
+                    .setParameter("username", username)
+                    .setParameter("fname", fname)
+                    .setParameter("threshold", threshold)
+                    .getSingleResult();
+            if (((Number) stats[0]).longValue() == 0L) {
+                return null;
+            }
+            final int deleted = entityManager.createQuery("DELETE FROM SubmissionEntity s " +
+                    GROUP_PREDICATE + " AND s.id.timestamp < :threshold")
+                    .setParameter("username", username)
+                    .setParameter("fname", fname)
+                    .setParameter("threshold", threshold)
+                    .executeUpdate();
+            deletedCount.add(deleted);
+            if (stats[1] != null) {
+                reclaimedBytes.add(((Number) stats[1]).longValue());
+            }
+            logger.debug("Deleted {} submission(s) of user '{}' to form '{}' made before {}",
+                    deleted, username, fname, threshold);
+            return null;
+        });
+
+    }
+
+}
@@ -20,16 +20,25 @@ package org.apereo.portal.fbms.data;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Column;
-import javax.persistence.Convert;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import java.util.Date;
 import java.util.Objects;
 
+/*
+ * Hibernate orders the primary key columns by property name (FORM_FNAME first), so queries by user
+ * and form need an index of their own.
+ */
 @Entity
-@Table(name = "FBMS_SUBMISSION")
+@Table(name = "FBMS_SUBMISSION", indexes = @Index(name = "FBMS_SUBMISSION_USER_FORM_IDX",
+        columnList = "USERNAME, FORM_FNAME, TIMESTAMP"))
 public class SubmissionEntity implements FbmsEntity {
 
     /**
@@ -38,10 +47,12 @@ public class SubmissionEntity implements FbmsEntity {
     @EmbeddedId
     private SubmissionIdentifier id;
 
-    @Column(name = "ANSWERS", length=100000, nullable = false)
-    @Convert(converter = JsonNodeToStringAttributeConverter.class)
-    @Lob
-    private JsonNode answers;
+    /*
+     * The JSON column is mapped through property access so that a value that was never
+     * materialized is written back (e.g. by merge) exactly as it was read.
+     */
+    @Transient
+    private StoredJson answers;
 
     public SubmissionIdentifier getId() {
         return id;
@@ -51,12 +62,49 @@ public class SubmissionEntity implements FbmsEntity {
         this.id = id;
     }
 
+    /**
+     * Obtains the answers, parsing them from their stored representation on first access.
+     */
     public JsonNode getAnswers() {
-        return answers;
+        return answers != null ? answers.get() : null;
     }
 
     public void setAnswers(JsonNode answers) {
-        this.answers = answers;
+        this.answers = StoredJson.of(answers);
+    }
+
+    /**
+     * Provides access to the answers without parsing them.
+     */
+    public StoredJson getStoredAnswers() {
+        return answers;
+    }
+
+    @Access(AccessType.PROPERTY)
+    @Column(name = "ANSWERS", length=100000, nullable = false)
+    @Lob
+    protected String getAnswersColumn() {
+        return answers != null ? answers.encode() : null;
+    }
+
+    protected void setAnswersColumn(String answersColumn) {
+        this.answers = StoredJson.ofEncoded(answersColumn);
+    }
+
+    /**
+     * Creates a copy of this {@link SubmissionEntity} that shares no mutable state with the
+     * original.
+     */
+    public SubmissionEntity deepCopy() {
+        final SubmissionIdentifier copyId = new SubmissionIdentifier();
+        copyId.setUsername(id.getUsername());
+        copyId.setFname(id.getFname());
+        copyId.setVersion(id.getVersion());
+        copyId.setTimestamp(id.getTimestamp() != null ? new Date(id.getTimestamp().getTime()) : null);
+        final SubmissionEntity rslt = new SubmissionEntity();
+        rslt.setId(copyId);
+        rslt.answers = answers != null ? answers.deepCopy() : null;
+        return rslt;
     }
 
     @Override
@@ -0,0 +1,62 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import java.util.Date;
+
+/**
+ * The state a new submission must be validated against:  the current version of the form and the
+ * timestamp of the user's most recent submission to it.  Produced by
+ * {@link SubmissionRepository#findPreconditions(String, String)} in one round trip, without loading
+ * any answers.
+ */
+public class SubmissionPreconditions {
+
+    private final Integer currentFormVersion;
+    private final Date latestSubmissionTimestamp;
+
+    public SubmissionPreconditions(Integer currentFormVersion, Date latestSubmissionTimestamp) {
+        this.currentFormVersion = currentFormVersion;
+        this.latestSubmissionTimestamp = latestSubmissionTimestamp;
+    }
+
+    /**
+     * The current version of the form, or <code>null</code> if there is no such form.
+     */
+    public Integer getCurrentFormVersion() {
+        return currentFormVersion;
+    }
+
+    /**
+     * The timestamp of the user's most recent submission to the form, or <code>null</code> if the
+     * user has not submitted it.
+     */
+    public Date getLatestSubmissionTimestamp() {
+        return latestSubmissionTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "SubmissionPreconditions{" +
+                "currentFormVersion=" + currentFormVersion +
+                ", latestSubmissionTimestamp=" + latestSubmissionTimestamp +
+                '}';
+    }
+
+}
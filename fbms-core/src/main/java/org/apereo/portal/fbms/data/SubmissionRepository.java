@@ -28,4 +28,16 @@ public interface SubmissionRepository extends CrudRepository<SubmissionEntity,Su
 
     SubmissionEntity findFirstByIdUsernameAndIdFnameOrderByIdTimestampDesc(String username, String fname);
 
+    /**
+     * Returns the current version of the form with the specified fname together with the timestamp
+     * of the specified user's most recent submission to it, or <code>null</code> if there is no
+     * such form.  Reads the FBMS_FORM_HEAD row and the submission primary key only;  no answers are
+     * loaded.
+     */
+    @Query("SELECT new org.apereo.portal.fbms.data.SubmissionPreconditions(h.version, " +
+            "(SELECT MAX(s.id.timestamp) FROM SubmissionEntity s " +
+            "WHERE s.id.username = :username AND s.id.fname = :fname)) " +
+            "FROM FormHeadEntity h WHERE h.fname = :fname")
+    SubmissionPreconditions findPreconditions(@Param("username") String username, @Param("fname") String fname);
+
 }
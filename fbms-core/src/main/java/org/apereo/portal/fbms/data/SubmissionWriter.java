@@ -0,0 +1,351 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Optional write-behind persistence for {@link SubmissionEntity} objects.  When enabled, accepted
+ * submissions are placed on a bounded queue and a single writer thread inserts them with the
+ * {@link SubmissionBatchInserter}, committing each batch in one transaction.  When the queue is full,
+ * {@link #enqueue(SubmissionEntity, HttpServletRequest)} throws a
+ * {@link SubmissionQueueFullException}.  {@link PostCommitExtensionFilter} beans are dispatched for
+ * each submission once it has been written (not when it is queued).
+ *
+ * <p>Submissions remain visible (through {@link #getPending(String, String)}) from the moment they
+ * are queued until they have been written.  Inserts that fail for reasons that may be temporary
+ * (e.g. the database is unreachable) are retried, with a growing delay, for as long as the
+ * application is running;  meanwhile the queue fills and new submissions are refused.  Submissions
+ * that cannot be written are reported to failure listeners (see
+ * {@link #addFailureListener(Consumer)}) so that caches stop serving them.  The queue is drained
+ * when the application shuts down.  Submissions still queued when the JVM terminates abnormally are
+ * lost, which is the trade-off for not waiting on the database within the request.
+ */
+@Component
+public class SubmissionWriter {
+
+    private static final long POLL_INTERVAL_MILLIS = 500L;
+
+    /**
+     * Attempts per insert once the application is shutting down (retries would outlast the drain).
+     */
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.queueCapacity:10000}")
+    private int queueCapacity;
+
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.batchSize:100}")
+    private int batchSize;
+
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.drainTimeoutSeconds:30}")
+    private long drainTimeoutSeconds;
+
+    /**
+     * Delay before the first retry of a temporary failure;  doubled for each subsequent retry.
+     */
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.retryDelayMillis:1000}")
+    private long retryDelayMillis;
+
+    @Value("${org.apereo.portal.fbms.submissions.writeBehind.maxRetryDelayMillis:30000}")
+    private long maxRetryDelayMillis;
+
+    @Autowired
+    private SubmissionBatchInserter batchInserter;
+
+    @Autowired(required = false)
+    private PostCommitFilterExecutor postCommitFilterExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<LatestSubmissionCache.Key,SubmissionEntity> pending = new ConcurrentHashMap<>();
+
+    private final List<Consumer<SubmissionEntity>> failureListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder retriedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private BlockingQueue<QueuedSubmission> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        if (meterRegistry != null) {
+            Gauge.builder("fbms.submissions.queued", queue, BlockingQueue::size)
+                    .description("The number of submissions waiting to be written")
+                    .register(meterRegistry);
+            FunctionCounter.builder("fbms.submissions.written", writtenCount, LongAdder::doubleValue)
+                    .description("The number of queued submissions written to the database")
+                    .register(meterRegistry);
+            FunctionCounter.builder("fbms.submissions.retried", retriedCount, LongAdder::doubleValue)
+                    .description("The number of times queued submissions were retried after a temporary failure")
+                    .register(meterRegistry);
+            FunctionCounter.builder("fbms.submissions.failed", failedCount, LongAdder::doubleValue)
+                    .description("The number of queued submissions that could not be written")
+                    .register(meterRegistry);
+            FunctionCounter.builder("fbms.submissions.rejected", rejectedCount, LongAdder::doubleValue)
+                    .description("The number of submissions rejected because the queue was full")
+                    .register(meterRegistry);
+        }
+
+        running = true;
+        writerThread = new Thread(this::run, "fbms-submission-writer");
+        writerThread.start();
+
+        logger.info("Write-behind persistence of submissions is enabled (queueCapacity={}, batchSize={})",
+                queueCapacity, batchSize);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        logger.info("Draining {} queued submission(s)", queue.size());
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(drainTimeoutSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive() || !queue.isEmpty()) {
+            logger.error("Shutting down with {} submission(s) not yet written", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the specified submission to be written.  The writer keeps its own copy, so the caller
+     * may continue to use (and modify) the specified submission.  The post-commit filters that apply
+     * to the request are selected now and dispatched after the submission has been written.
+     *
+     * @return The submission that was passed in (for convenience)
+     * @throws SubmissionQueueFullException If the submission cannot be accepted
+     */
+    public SubmissionEntity enqueue(SubmissionEntity submission, HttpServletRequest request) {
+        if (!running) {
+            throw new SubmissionQueueFullException("Submissions are not being accepted for write-behind");
+        }
+        final SubmissionEntity copy = submission.deepCopy();
+        final Runnable afterWrite = postCommitFilterExecutor != null
+                ? postCommitFilterExecutor.prepare(
+                        new ExtensionFilterChainMetadata(copy.getId().getFname(), SubmissionEntity.class),
+                        copy, request)
+                : null;
+        final LatestSubmissionCache.Key key = keyOf(copy);
+        // Make the submission visible before the writer can possibly remove it
+        pending.merge(key, copy, LatestSubmissionCache::newer);
+        if (!queue.offer(new QueuedSubmission(copy, afterWrite))) {
+            pending.remove(key, copy);
+            rejectedCount.increment();
+            throw new SubmissionQueueFullException("The submission queue is full");
+        }
+        return submission;
+    }
+
+    /**
+     * Registers a callback that receives each queued submission that could not be written (after it
+     * has been removed from the pending submissions).  Invoked on the writer thread.
+     */
+    public void addFailureListener(Consumer<SubmissionEntity> listener) {
+        failureListeners.add(listener);
+    }
+
+    /**
+     * Obtains the most recent submission by the specified user to the form with the specified fname
+     * that has been queued but not yet written, or <code>null</code> if there is none.  The result
+     * is shared and must not be modified.
+     */
+    public SubmissionEntity getPending(String username, String fname) {
+        return pending.isEmpty() ? null : pending.get(new LatestSubmissionCache.Key(username, fname));
+    }
+
+    /*
+     * Nested Types
+     */
+
+    private static final class QueuedSubmission {
+
+        private final SubmissionEntity submission;
+        private final Runnable afterWrite; // May be null
+
+        private QueuedSubmission(SubmissionEntity submission, Runnable afterWrite) {
+            this.submission = submission;
+            this.afterWrite = afterWrite;
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void run() {
+        final List<QueuedSubmission> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                final QueuedSubmission first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                logger.error("The submission writer was interrupted with {} submission(s) queued", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected failure in the submission writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the batch, retrying submissions that fail for reasons that may be temporary.  Every
+     * submission in the batch is either written (and its post-commit filters dispatched) or reported
+     * as failed when this method returns.
+     */
+    private void write(List<QueuedSubmission> batch) {
+        List<QueuedSubmission> remaining = batch;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                final List<RuntimeException> failures = batchInserter.insert(remaining.stream()
+                        .map(queued -> queued.submission)
+                        .collect(Collectors.toList()));
+                final List<QueuedSubmission> retry = new ArrayList<>();
+                RuntimeException lastFailure = null;
+                for (int i = 0; i < remaining.size(); i++) {
+                    final QueuedSubmission queued = remaining.get(i);
+                    final RuntimeException failure = failures.get(i);
+                    if (failure == null) {
+                        writtenCount.increment();
+                        pending.remove(keyOf(queued.submission), queued.submission);
+                        afterWrite(queued);
+                    } else if (isTransient(failure) && (running || attempt < SHUTDOWN_ATTEMPTS)) {
+                        retry.add(queued);
+                        lastFailure = failure;
+                    } else {
+                        fail(queued.submission, failure);
+                    }
+                }
+                if (retry.isEmpty()) {
+                    return;
+                }
+                final long delay = Math.min(maxRetryDelayMillis, retryDelayMillis << Math.min(attempt - 1, 20));
+                logger.warn("Failed to write {} submission(s) on attempt {};  retrying in {}ms:  {}",
+                        retry.size(), attempt, delay, lastFailure.toString());
+                retriedCount.add(retry.size());
+                remaining = retry;
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // The run loop will exit
+            remaining.forEach(queued -> fail(queued.submission, null));
+        } catch (RuntimeException e) {
+            remaining.stream()
+                    .map(queued -> queued.submission)
+                    .filter(submission -> pending.get(keyOf(submission)) == submission)
+                    .forEach(submission -> fail(submission, e));
+            throw e;
+        }
+    }
+
+    private void afterWrite(QueuedSubmission queued) {
+        if (queued.afterWrite != null) {
+            try {
+                queued.afterWrite.run();
+            } catch (RuntimeException e) {
+                logger.error("Failed to dispatch post-commit filters for submission {}", queued.submission, e);
+            }
+        }
+    }
+
+    /**
+     * Failures that may succeed if the same insert is tried again later.
+     */
+    /* package-private */ static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void fail(SubmissionEntity submission, RuntimeException failure) {
+        logger.error("Failed to write submission {};  it is lost", submission, failure);
+        failedCount.increment();
+        pending.remove(keyOf(submission), submission);
+        for (Consumer<SubmissionEntity> listener : failureListeners) {
+            try {
+                listener.accept(submission);
+            } catch (RuntimeException e) {
+                logger.error("Failure listener {} threw an exception", listener, e);
+            }
+        }
+    }
+
+    private static LatestSubmissionCache.Key keyOf(SubmissionEntity submission) {
+        return new LatestSubmissionCache.Key(submission.getId().getUsername(), submission.getId().getFname());
+    }
+
+}
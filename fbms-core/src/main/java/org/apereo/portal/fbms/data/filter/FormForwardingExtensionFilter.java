@@ -19,6 +19,7 @@
 package org.apereo.portal.fbms.data.filter;
 
 import org.apereo.portal.fbms.data.ExtensionFilter;
+import org.apereo.portal.fbms.data.ExtensionFilterApplicability;
 import org.apereo.portal.fbms.data.ExtensionFilterChain;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
 import org.apereo.portal.fbms.data.FbmsEntity;
@@ -44,6 +45,14 @@ public class FormForwardingExtensionFilter extends AbstractExtensionFilter<Submi
         super(ExtensionFilter.ORDER_EARLIEST); // First-in, last-out
     }
 
+    @Override
+    public ExtensionFilterApplicability getApplicability() {
+        return ExtensionFilterApplicability.builder()
+                .entityClasses(SubmissionEntity.class)
+                .methods("POST")
+                .build();
+    }
+
     @Override
     public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
         // Applies only when a Submission is posted
@@ -0,0 +1,185 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.networknt.schema.JsonMetaSchema;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaException;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.data.ExtensionFilter;
+import org.apereo.portal.fbms.data.ExtensionFilterApplicability;
+import org.apereo.portal.fbms.data.ExtensionFilterChain;
+import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
+import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
+import org.apereo.portal.fbms.data.FbmsEntity;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.LatestFormCache;
+import org.apereo.portal.fbms.data.SubmissionEntity;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.apereo.portal.fbms.util.MessageServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Rejects submissions whose answers do not satisfy the JSON Schema of the form (version) they were
+ * submitted against.  Each validation message is reported through {@link MessageServices}.
+ *
+ * <p>Schemas are compiled into validators once per form version and kept in a bounded cache, so
+ * validating a submission walks the answers without parsing the schema.  Schemas that don't
+ * declare <code>$schema</code> are treated as draft-07 (the default of react-jsonschema-form).
+ * Form versions that have no schema, or whose schema cannot be compiled, are cached as well (as
+ * empty), so that each submission to them doesn't reload and recompile the schema.
+ */
+@Component
+public class JsonSchemaValidationExtensionFilter extends AbstractExtensionFilter<SubmissionEntity> {
+
+    private static final String CACHE_NAME = "schemaValidators";
+
+    @Value("${org.apereo.portal.fbms.submissions.validation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${org.apereo.portal.fbms.submissions.validation.maximumCachedValidators:500}")
+    private long maximumCachedValidators;
+
+    @Autowired
+    private LatestFormCache latestFormCache;
+
+    @Autowired
+    private FormRepository formRepository;
+
+    @Autowired
+    private MessageServices messageServices;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final JsonSchemaFactory schemaFactory = JsonSchemaFactory
+            .builder(JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7))
+            .addMetaSchema(JsonMetaSchema.getV4())
+            .addMetaSchema(JsonMetaSchema.getV6())
+            .addMetaSchema(JsonMetaSchema.getV201909())
+            .build();
+
+    private BoundedCache<FormIdentifier,Optional<JsonSchema>> validators;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public JsonSchemaValidationExtensionFilter() {
+        super(ExtensionFilter.ORDER_VERY_EARLY); // Before other filters do any work
+    }
+
+    @PostConstruct
+    public void init() {
+        validators = new BoundedCache<>(CACHE_NAME, maximumCachedValidators, 0L);
+        if (meterRegistry != null) {
+            validators.bindTo(meterRegistry);
+        }
+    }
+
+    @Override
+    public ExtensionFilterApplicability getApplicability() {
+        return enabled
+                ? ExtensionFilterApplicability.builder()
+                        .entityClasses(SubmissionEntity.class)
+                        .methods("POST")
+                        .build()
+                : ExtensionFilterApplicability.NONE;
+    }
+
+    @Override
+    public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+        // Applies only when a Submission is posted
+        return enabled
+                && SubmissionEntity.class.equals(metadata.getEntityClass())
+                && request.getMethod().equalsIgnoreCase("POST");
+    }
+
+    @Override
+    public SubmissionEntity doFilter(SubmissionEntity entity, HttpServletRequest request,
+            HttpServletResponse response, ExtensionFilterChain<SubmissionEntity> chain) {
+
+        final FormIdentifier formId = new FormIdentifier();
+        formId.setFname(entity.getId().getFname());
+        formId.setVersion(entity.getId().getVersion());
+
+        final Optional<JsonSchema> validator = validators.get(formId, this::compile);
+        if (validator != null && validator.isPresent()) {
+            final JsonNode answers = entity.getAnswers() != null ? entity.getAnswers() : NullNode.getInstance();
+            final Set<ValidationMessage> errors = validator.get().validate(answers);
+            if (!errors.isEmpty()) {
+                logger.debug("Rejecting a submission to form {} with {} validation error(s):  {}",
+                        formId, errors.size(), errors);
+                errors.forEach(error -> messageServices.addMessage(request, error.getMessage()));
+                throw new ExtensionFilterChainAbortException("The submission does not satisfy the schema of form "
+                        + formId.getFname() + " (version " + formId.getVersion() + ")");
+            }
+        }
+
+        return chain.doFilter(entity);
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * Returns empty (no validation, remembered) if the form version has no schema or the schema
+     * cannot be compiled, and <code>null</code> (no validation, not remembered) if the form
+     * version doesn't exist (yet).
+     */
+    private Optional<JsonSchema> compile(FormIdentifier formId) {
+
+        FormEntity form = latestFormCache.getLatest(formId.getFname());
+        if (form == null || form.getId().getVersion() != formId.getVersion()) {
+            form = formRepository.findById(formId).orElse(null);
+        }
+        if (form == null) {
+            return null;
+        }
+        if (form.getSchema() == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(schemaFactory.getSchema(form.getSchema()));
+        } catch (JsonSchemaException e) {
+            logger.error("Unable to compile the schema of form {};  submissions will not be validated", formId, e);
+            return Optional.empty();
+        }
+
+    }
+
+}
@@ -20,11 +20,16 @@ package org.apereo.portal.fbms.data.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apereo.portal.fbms.data.ExtensionFilter;
+import org.apereo.portal.fbms.data.ExtensionFilterApplicability;
 import org.apereo.portal.fbms.data.ExtensionFilterChain;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
 import org.apereo.portal.fbms.data.FbmsEntity;
 import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.StoredJson;
+import org.apereo.portal.fbms.util.BoundedCache;
 import org.apereo.portal.fbms.util.UserServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +37,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Collections;
@@ -43,29 +49,85 @@ import java.util.Set;
 /**
  * If the user matches a set of group names (or the inverse),
  * remove the specified JSON path(s)
+ *
+ * <p>This filter never modifies the schema it receives.  The trimmed schema is computed once per
+ * version of the target form and cached as (immutable) JSON text;  users for whom nothing is
+ * removed receive the form unchanged.  (This approach assumes that filters closer to the data
+ * source than this one don't vary the schema from one request to the next.)  Each request receives
+ * a new {@link StoredJson} over the cached text, which is written to the response without being
+ * parsed, or parsed once (into a tree of its own) if a filter that runs after this one reads or
+ * modifies it.
  */
 public class RoleBasedSchemaTrimmingExtensionFilter extends AbstractExtensionFilter<FormEntity> {
 
     private static final Set<HttpMethod> RELEVANT_HTTP_METHODS =
             new HashSet<>(Collections.singletonList(HttpMethod.GET));
 
+    /**
+     * Default upper bound on the number of trimmed schemas (i.e. form versions) kept in memory.
+     */
+    public static final int DEFAULT_MAXIMUM_CACHED_SCHEMAS = 100;
+
     @Autowired
     private UserServices userServices;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private List<String> targetGroups;
     private Map<String, List<String>> jsonToRemove;
     private final boolean inverseFlag;
     private final String targetForm;
+    private final BoundedCache<FormIdentifier,String> trimmedSchemas;
 
     public RoleBasedSchemaTrimmingExtensionFilter(String targetForm, List<String> targetGroups,
             Map<String, List<String>> jsonToRemove, boolean inverseFlag) {
+        this(targetForm, targetGroups, jsonToRemove, inverseFlag, DEFAULT_MAXIMUM_CACHED_SCHEMAS);
+    }
+
+    public RoleBasedSchemaTrimmingExtensionFilter(String targetForm, List<String> targetGroups,
+            Map<String, List<String>> jsonToRemove, boolean inverseFlag, int maximumCachedSchemas) {
+        this(targetForm, targetGroups, jsonToRemove, inverseFlag, maximumCachedSchemas,
+                defaultCacheName(targetForm, targetGroups, inverseFlag));
+    }
+
+    /**
+     * @param cacheName Identifies the cache of trimmed schemas in metrics;  must be unique among
+     * the instances of this filter
+     */
+    public RoleBasedSchemaTrimmingExtensionFilter(String targetForm, List<String> targetGroups,
+            Map<String, List<String>> jsonToRemove, boolean inverseFlag, int maximumCachedSchemas,
+            String cacheName) {
         super(ExtensionFilter.ORDER_LATE); // Close to the data source
         this.targetForm = targetForm;
         this.targetGroups = targetGroups;
         this.jsonToRemove = jsonToRemove;
         this.inverseFlag = inverseFlag;
+        this.trimmedSchemas = new BoundedCache<>(cacheName, maximumCachedSchemas, 0L);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            trimmedSchemas.bindTo(meterRegistry);
+        }
+    }
+
+    /**
+     * The user's groups are considered in <code>doFilter</code>, so applicability is entirely static.
+     */
+    @Override
+    public ExtensionFilterApplicability getApplicability() {
+        // targetForm must be supplied since we need a reference to the json structure
+        return !StringUtils.isEmpty(this.targetForm)
+                ? ExtensionFilterApplicability.builder()
+                        .entityClasses(FormEntity.class)
+                        .methods(HttpMethod.GET.name())
+                        .fnames(this.targetForm)
+                        .build()
+                : ExtensionFilterApplicability.NONE;
     }
 
     @Override
@@ -85,7 +147,7 @@ public class RoleBasedSchemaTrimmingExtensionFilter extends AbstractExtensionFil
         FormEntity rslt = entity;
         // Repository interaction
         rslt = chain.doFilter(rslt);
-        if ((targetGroups == null) || (jsonToRemove == null) || (rslt == null) || (rslt.getSchema() == null)) {
+        if ((targetGroups == null) || (jsonToRemove == null) || (rslt == null) || (rslt.getStoredSchema() == null)) {
             //Skip the filter
             logger.warn("Target groups, JSON keys, form, or form schema is null.  Skipping this filter.");
         } else {
@@ -98,12 +160,12 @@ public class RoleBasedSchemaTrimmingExtensionFilter extends AbstractExtensionFil
                 logger.debug("User [{}] in groups [{}] is associated with at least one of the targeted groups of [{}] " +
                                 "and flag is set to remove if user is included.  Removing the JSON at [{}]",
                         username, associatedGroups, targetGroups, jsonToRemove);
-                removeJson(jsonToRemove, rslt);
+                rslt = withTrimmedSchema(rslt);
             } else if (!associated && inverseFlag) {
                 logger.debug("User [{}] in groups [{}] is not associated with any of the targeted groups of [{}] " +
                                 "and flag is set to remove if user is not included.  Removing the JSON at [{}]",
                         username, associatedGroups, targetGroups, jsonToRemove);
-                removeJson(jsonToRemove, rslt);
+                rslt = withTrimmedSchema(rslt);
             } else {
                 logger.debug("Not changing the JSON - User [{}], groups [{}], targeted groups of [{}], inverse flag [{}], JSON [{}].",
                         username, associatedGroups, targetGroups, inverseFlag, jsonToRemove);
@@ -123,11 +185,46 @@ public class RoleBasedSchemaTrimmingExtensionFilter extends AbstractExtensionFil
         return false;
     }
 
-    private void removeJson(Map<String, List<String>> jsonPaths, FormEntity form) {
+    /**
+     * Names the cache after everything that distinguishes one instance of this filter from another
+     * (e.g. <code>trimmedSchemas.survey.unless.Staff,Faculty</code>), so that the meters of two
+     * instances that target the same form don't collide.
+     */
+    private static String defaultCacheName(String targetForm, List<String> targetGroups, boolean inverseFlag) {
+        return "trimmedSchemas." + targetForm
+                + (inverseFlag ? ".unless." : ".for.")
+                + (targetGroups != null ? String.join(",", targetGroups) : "");
+    }
+
+    /**
+     * Returns a new {@link FormEntity} that matches the specified one (sharing its metadata),
+     * except that its schema is the (cached) trimmed variant.  Neither the original schema (after
+     * the first request for a version) nor the metadata is parsed.
+     */
+    private FormEntity withTrimmedSchema(FormEntity form) {
+        final FormIdentifier key = new FormIdentifier();
+        key.setFname(form.getId().getFname());
+        key.setVersion(form.getId().getVersion());
+        final String trimmedSchema = trimmedSchemas.get(key,
+                k -> removeJson(jsonToRemove, form.getSchema()).toString());
+
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(form.getId());
+        rslt.setStoredSchema(StoredJson.ofEncoded(trimmedSchema));
+        rslt.setStoredMetadata(form.getStoredMetadata());
+        return rslt;
+    }
+
+    /**
+     * Returns a copy of the specified schema with the JSON paths removed;  the original is not
+     * modified.
+     */
+    private JsonNode removeJson(Map<String, List<String>> jsonPaths, JsonNode originalSchema) {
+        final JsonNode rslt = originalSchema.deepCopy();
         // We need a reference to the form...
-        logger.debug("Before removing [{}], original JSON = [{}]", jsonPaths, form.getSchema().toString());
+        logger.debug("Before removing [{}], original JSON = [{}]", jsonPaths, rslt);
         for (String pointer : jsonPaths.keySet()) {
-            final JsonNode targetedNode = form.getSchema().at(pointer);
+            final JsonNode targetedNode = rslt.at(pointer);
             if (!targetedNode.isMissingNode()) {
                 try {
                     for (String key : jsonPaths.get(pointer)) {
@@ -142,7 +239,8 @@ public class RoleBasedSchemaTrimmingExtensionFilter extends AbstractExtensionFil
                 logger.warn("Unable to find form [{}] node of [{}]", this.targetForm, pointer);
             }
         }
-        logger.debug("After removing [{}], resulting JSON = [{}]", jsonPaths, form.getSchema().toString());
+        logger.debug("After removing [{}], resulting JSON = [{}]", jsonPaths, rslt);
+        return rslt;
 
     }
 }
@@ -18,11 +18,11 @@
  */
 package org.apereo.portal.fbms.data.filter;
 
+import org.apereo.portal.fbms.data.ExtensionFilterApplicability;
 import org.apereo.portal.fbms.data.ExtensionFilterChain;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
 import org.apereo.portal.fbms.data.FbmsEntity;
-import org.apereo.portal.fbms.data.FormEntity;
-import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
 import org.apereo.portal.fbms.data.SubmissionEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -41,7 +41,15 @@ public class UpToDateExtensionFilter extends AbstractExtensionFilter<SubmissionE
     public static final String UP_TO_DATE_HEADER_NAME = "X-FBMS-UpToDate";
 
     @Autowired
-    private FormRepository formRepository;
+    private FormVersionRegistry formVersionRegistry;
+
+    @Override
+    public ExtensionFilterApplicability getApplicability() {
+        return ExtensionFilterApplicability.builder()
+                .entityClasses(SubmissionEntity.class)
+                .methods("GET")
+                .build();
+    }
 
     @Override
     public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
@@ -58,8 +66,8 @@ public class UpToDateExtensionFilter extends AbstractExtensionFilter<SubmissionE
 
         if (rslt != null) {
             // Set the X-FBMS-UpToDate header
-            final FormEntity form = formRepository.findFirstByIdFnameOrderByIdVersionDesc(rslt.getId().getFname());
-            final boolean upToDate = rslt.getId().getVersion() == form.getId().getVersion();
+            final Integer currentVersion = formVersionRegistry.getCurrentVersion(rslt.getId().getFname());
+            final boolean upToDate = currentVersion != null && rslt.getId().getVersion() == currentVersion;
             response.setHeader(UP_TO_DATE_HEADER_NAME, Boolean.toString(upToDate));
         }
 
@@ -0,0 +1,299 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe, in-memory cache that is bounded by the total <em>weight</em> of its entries and
+ * (optionally) by their age.  Backed by Caffeine, which provides lock-free reads and evicts entries
+ * by a combination of recency and frequency when the total weight exceeds the maximum.  The cache
+ * keeps hit, miss, and eviction counts, which it publishes as Micrometer meters when bound to a
+ * <code>MeterRegistry</code>.
+ *
+ * <p>Values are stored by reference;  callers that hand out cached values must treat them as
+ * shared (i.e. not modify them).
+ */
+public class BoundedCache<K,V> implements MeterBinder {
+
+    private final String name;
+    private final long maximumWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final Cache<K,V> cache;
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Creates a cache in which every entry has a weight of one (i.e. bounded by entry count).
+     *
+     * @param name Identifies this cache in metrics and logs
+     * @param maximumSize The maximum number of entries
+     * @param timeToLiveMillis The maximum age of an entry, or zero (or less) for no maximum
+     */
+    public BoundedCache(String name, long maximumSize, long timeToLiveMillis) {
+        this(name, maximumSize, timeToLiveMillis, value -> 1L);
+    }
+
+    /**
+     * Creates a cache bounded by the sum of the weights of its entries.
+     *
+     * @param name Identifies this cache in metrics and logs
+     * @param maximumWeight The maximum total weight of all entries
+     * @param timeToLiveMillis The maximum age of an entry, or zero (or less) for no maximum
+     * @param weigher Calculates the weight of a value;  called once when the value is stored
+     */
+    public BoundedCache(String name, long maximumWeight, long timeToLiveMillis, ToLongFunction<? super V> weigher) {
+        if (name == null) {
+            throw new IllegalArgumentException("Argument 'name' cannot be null");
+        }
+        if (maximumWeight < 0L) {
+            throw new IllegalArgumentException("Argument 'maximumWeight' cannot be negative");
+        }
+        if (weigher == null) {
+            throw new IllegalArgumentException("Argument 'weigher' cannot be null");
+        }
+        this.name = name;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+
+        final Caffeine<K,V> builder = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((K key, V value) -> weigh(weigher, value))
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(currentTimeMillis()))
+                .executor(Runnable::run) // Maintenance and notifications run on the calling thread
+                .removalListener((K key, V value, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE) {
+                        evictionCount.increment();
+                    } else if (cause == RemovalCause.EXPIRED) {
+                        expirationCount.increment();
+                    }
+                })
+                .recordStats();
+        if (timeToLiveMillis > 0L) {
+            builder.expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value associated with the key, or <code>null</code> if there isn't one (or it
+     * has expired).
+     */
+    public V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Returns the value associated with the key, obtaining it from the <code>loader</code> (and
+     * storing it) if necessary.  Concurrent callers for the same key wait for a single load;  the
+     * loader must not access this cache.  Values that the loader returns as <code>null</code> are
+     * not cached.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return cache.get(key, loader);
+    }
+
+    /**
+     * Associates the value with the key, replacing the existing value (if any).
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Argument 'value' cannot be null");
+        }
+        if (weigher.applyAsLong(value) > maximumWeight) {
+            // This value would never fit;  don't displace everything else trying
+            cache.invalidate(key);
+            return;
+        }
+        cache.put(key, value);
+    }
+
+    /**
+     * Associates the value with the key if there is no (unexpired) value for that key already.
+     *
+     * @return The existing value, or <code>null</code> if the specified value was stored
+     */
+    public V putIfAbsent(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Argument 'value' cannot be null");
+        }
+        return cache.asMap().putIfAbsent(key, value);
+    }
+
+    /**
+     * Similar to <code>Map.merge</code>:  stores the value if there is no (unexpired) value for the
+     * key already;  otherwise stores the result of the remapping function, which receives the
+     * existing value first and the specified value second.
+     *
+     * @return The value that is associated with the key when this method returns
+     */
+    public V merge(K key, V value, BinaryOperator<V> remappingFunction) {
+        if (value == null) {
+            throw new IllegalArgumentException("Argument 'value' cannot be null");
+        }
+        return cache.asMap().merge(key, value, remappingFunction);
+    }
+
+    /**
+     * Removes the value associated with the key, if any.
+     */
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Removes the value associated with the key, if it matches the predicate.
+     */
+    public void invalidate(K key, Predicate<? super V> predicate) {
+        cache.asMap().computeIfPresent(key, (k, value) -> predicate.test(value) ? null : value);
+    }
+
+    /**
+     * Removes the entries whose keys match the predicate.
+     */
+    public void invalidateAll(Predicate<? super K> predicate) {
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public int size() {
+        cache.cleanUp();
+        return (int) cache.estimatedSize();
+    }
+
+    public long getWeight() {
+        cache.cleanUp();
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * The number of entries removed to stay within the maximum weight.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * The number of entries removed because they exceeded the time-to-live.
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("fbms.cache.gets", this, BoundedCache::getHitCount)
+                .tag("cache", name)
+                .tag("result", "hit")
+                .description("The number of times cache lookup methods have returned a cached value")
+                .register(registry);
+        FunctionCounter.builder("fbms.cache.gets", this, BoundedCache::getMissCount)
+                .tag("cache", name)
+                .tag("result", "miss")
+                .description("The number of times cache lookup methods have not returned a value")
+                .register(registry);
+        FunctionCounter.builder("fbms.cache.evictions", evictionCount, LongAdder::doubleValue)
+                .tag("cache", name)
+                .description("The number of entries evicted to stay within the maximum weight")
+                .register(registry);
+        FunctionCounter.builder("fbms.cache.expirations", expirationCount, LongAdder::doubleValue)
+                .tag("cache", name)
+                .description("The number of entries removed because they exceeded the time-to-live")
+                .register(registry);
+        Gauge.builder("fbms.cache.size", this, BoundedCache::size)
+                .tag("cache", name)
+                .description("The number of entries in the cache")
+                .register(registry);
+        Gauge.builder("fbms.cache.weight", this, BoundedCache::getWeight)
+                .tag("cache", name)
+                .description("The total weight of the entries in the cache")
+                .register(registry);
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedCache{" +
+                "name='" + name + '\'' +
+                ", size=" + size() +
+                ", weight=" + getWeight() +
+                ", maximumWeight=" + maximumWeight +
+                ", hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", evictionCount=" + getEvictionCount() +
+                ", expirationCount=" + getExpirationCount() +
+                '}';
+    }
+
+    /**
+     * The clock used to evaluate the time-to-live.  Subclasses (e.g. tests) may override.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * Caffeine weights are <code>int</code>, and it never evicts entries with a weight of zero.
+     */
+    private static <V> int weigh(ToLongFunction<? super V> weigher, V value) {
+        return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, weigher.applyAsLong(value)));
+    }
+
+}
@@ -30,10 +30,17 @@ public class MessageServices {
                     "HTTP methods:  " + ALLOWED_HTTP_METHODS);
         }
 
-        List<String> messages = (List<String>) request.getAttribute(REQUEST_ATTRIBUTE_NAME);
-        if (messages == null) {
-            messages = new ArrayList<>();
-            request.setAttribute(REQUEST_ATTRIBUTE_NAME, messages);
+        /*
+         * Messages may be added from more than one thread (e.g. by asynchronous work deferred by
+         * filters of extension URIs).
+         */
+        List<String> messages;
+        synchronized (request) {
+            messages = (List<String>) request.getAttribute(REQUEST_ATTRIBUTE_NAME);
+            if (messages == null) {
+                messages = Collections.synchronizedList(new ArrayList<>());
+                request.setAttribute(REQUEST_ATTRIBUTE_NAME, messages);
+            }
         }
 
         messages.add(message);
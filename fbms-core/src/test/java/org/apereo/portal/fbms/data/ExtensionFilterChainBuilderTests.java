@@ -1,5 +1,9 @@
 package org.apereo.portal.fbms.data;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apereo.portal.fbms.data.filter.AbstractExtensionFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,13 +14,24 @@ import org.springframework.core.OrderComparator;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -124,10 +139,411 @@ public class ExtensionFilterChainBuilderTests extends ExtensionFilterChainBuilde
         );
     }
 
+    @Test
+    public void staticApplicabilityTest() {
+        final ExtensionFilter<FormEntity> formGetOnly =
+                new AbstractTestExtensionFilter<FormEntity>("formGetOnly", ExtensionFilter.ORDER_NORMAL) {
+            @Override
+            public ExtensionFilterApplicability getApplicability() {
+                return ExtensionFilterApplicability.builder()
+                        .entityClasses(FormEntity.class)
+                        .methods("GET")
+                        .build();
+            }
+            @Override
+            public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+                throw new AssertionError("Filters that aren't dynamic should not be asked");
+            }
+        };
+        setFilters(Collections.singletonList(formGetOnly));
+
+        when(request.getMethod()).thenReturn("GET");
+        fromSupplier(formMetedata, request, response, () -> null).get();
+        assertArrayEquals(new Object[] { formGetOnly }, accumulatedFilters.toArray());
+
+        accumulatedFilters.clear();
+        when(request.getMethod()).thenReturn("POST");
+        fromSupplier(formMetedata, request, response, () -> null).get();
+        fromSupplier(submissionMetedata, request, response, () -> null).get();
+        assertArrayEquals(new Object[0], accumulatedFilters.toArray());
+    }
+
+    @Test
+    public void circuitBreakerTest() {
+        final AtomicInteger invocations = new AtomicInteger();
+        final AtomicInteger completions = new AtomicInteger();
+        final ExtensionFilter<FormEntity> failOpen = new FailingExtensionFilter(invocations,
+                ExtensionFilterPolicy.builder().failOpen().failureThreshold(2).openMillis(60000L).build());
+        setFilters(Collections.singletonList(failOpen));
+
+        // The filter fails, but the request continues without it;  the circuit opens on the 2nd failure
+        for (int i = 0; i < 3; i++) {
+            fromSupplier(formMetedata, request, response, () -> {
+                completions.incrementAndGet();
+                return null;
+            }).get();
+        }
+        assertEquals(2, invocations.get());
+        assertEquals(3, completions.get());
+
+        invocations.set(0);
+        completions.set(0);
+        final ExtensionFilter<FormEntity> failClosed = new FailingExtensionFilter(invocations,
+                ExtensionFilterPolicy.builder().failClosed().failureThreshold(2).openMillis(60000L).build());
+        setFilters(Collections.singletonList(failClosed));
+
+        // The filter's exception propagates until the circuit opens;  then requests are rejected
+        final Supplier<FormEntity> supplier = fromSupplier(formMetedata, request, response, () -> {
+            completions.incrementAndGet();
+            return null;
+        });
+        assertThrows(IllegalStateException.class, supplier::get);
+        assertThrows(IllegalStateException.class, supplier::get);
+        assertThrows(ExtensionFilterUnavailableException.class, supplier::get);
+        assertEquals(2, invocations.get());
+        assertEquals(0, completions.get());
+    }
+
+    @Test
+    public void slowCallThresholdTest() throws Exception {
+        final AtomicInteger invocations = new AtomicInteger();
+        final ExtensionFilterPolicy policy = ExtensionFilterPolicy.builder()
+                .failClosed().slowCallThresholdMillis(10L).failureThreshold(1).openMillis(60000L).build();
+
+        // A call that returns after the threshold completes normally, but it opens the circuit
+        setFilters(Collections.singletonList(new SlowExtensionFilter(invocations, policy, () -> sleep(50L))));
+        final Supplier<FormEntity> supplier = fromSupplier(formMetedata, request, response, () -> null);
+        supplier.get();
+        assertThrows(ExtensionFilterUnavailableException.class, supplier::get);
+        assertEquals(1, invocations.get());
+
+        /*
+         * The threshold is not a timeout:  a call is measured only once it returns, so a call that
+         * is still running (however long) is not counted and leaves the circuit closed.
+         */
+        invocations.set(0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        setFilters(Collections.singletonList(new SlowExtensionFilter(invocations, policy, () -> {
+            if (entered.getCount() != 0L) {
+                entered.countDown();
+                await(release);
+            }
+        })));
+        final Supplier<FormEntity> hanging = fromSupplier(formMetedata, request, response, () -> null);
+        final Thread thread = new Thread(hanging::get);
+        thread.start();
+        try {
+            assertTrue(entered.await(10L, TimeUnit.SECONDS));
+            sleep(50L);
+            hanging.get();
+            hanging.get();
+            assertEquals(3, invocations.get());
+        } finally {
+            release.countDown();
+            thread.join(10000L);
+        }
+        assertFalse(thread.isAlive());
+        // Once it returns, the slow call counts
+        assertThrows(ExtensionFilterUnavailableException.class, hanging::get);
+        assertEquals(3, invocations.get());
+    }
+
+    @Test
+    public void cacheableFilterTest() {
+        final AtomicInteger invocations = new AtomicInteger();
+        final String[] group = { "Students" };
+        final CacheableExtensionFilter<FormEntity> enriching = new CacheableExtensionFilter<FormEntity>() {
+            @Override
+            public Object getCacheKey(ExtensionFilterChainMetadata metadata, FormEntity entity, HttpServletRequest request) {
+                return group[0];
+            }
+            @Override
+            public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+                return true;
+            }
+            @Override
+            public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                    ExtensionFilterChain<FormEntity> chain) {
+                final FormEntity rslt = chain.doFilter(entity);
+                invocations.incrementAndGet(); // Skipped when the output is cached
+                return rslt;
+            }
+            @Override
+            public int getOrder() {
+                return ExtensionFilter.ORDER_NORMAL;
+            }
+        };
+        setFilters(Collections.singletonList(enriching));
+        initResults(1000000L, 0L);
+        when(request.getMethod()).thenReturn("GET");
+
+        // Cached per key
+        assertEquals(1, fromSupplier(formMetedata, request, response, () -> form(1)).get().getId().getVersion());
+        fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals(1, invocations.get());
+        group[0] = "Faculty";
+        fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals(2, invocations.get());
+
+        // Saving a new version of the form discards results for older versions
+        when(request.getMethod()).thenReturn("PUT");
+        fromUnaryOperator(formMetedata, form(2), request, response, UnaryOperator.identity()).get();
+        assertEquals(3, invocations.get()); // Not cached
+        when(request.getMethod()).thenReturn("GET");
+        fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals(4, invocations.get());
+    }
+
+    @Test
+    public void cacheableFilterOrderAndContentTest() {
+        final List<String> events = new ArrayList<>();
+        final AtomicInteger enrichments = new AtomicInteger();
+        final String[] group = { "Students" };
+        final CacheableExtensionFilter<FormEntity> enriching = new CacheableExtensionFilter<FormEntity>() {
+            @Override
+            public Object getCacheKey(ExtensionFilterChainMetadata metadata, FormEntity entity, HttpServletRequest request) {
+                return "everyone"; // Depends only on the entity
+            }
+            @Override
+            public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                    ExtensionFilterChain<FormEntity> chain) {
+                events.add("enriching");
+                final FormEntity rslt = chain.doFilter(entity);
+                enrichments.incrementAndGet();
+                ((ObjectNode) rslt.getMetadata()).put("enriched", true);
+                return rslt;
+            }
+            @Override
+            public int getOrder() {
+                return ExtensionFilter.ORDER_NORMAL;
+            }
+        };
+        // Runs inside the cacheable filter and changes the entity per request (like schema trimming)
+        final ExtensionFilter<FormEntity> trimming = new AbstractExtensionFilter<FormEntity>(ExtensionFilter.ORDER_LATE) {
+            @Override
+            public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+                return true;
+            }
+            @Override
+            public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                    ExtensionFilterChain<FormEntity> chain) {
+                events.add("trimming");
+                final FormEntity rslt = chain.doFilter(entity);
+                rslt.setMetadata(JsonNodeFactory.instance.objectNode().put("group", group[0]));
+                return rslt;
+            }
+        };
+        final List<ExtensionFilter> filters = new ArrayList<>(Arrays.asList(trimming, enriching));
+        filters.sort(new OrderComparator());
+        setFilters(filters);
+        initResults(1000000L, 0L);
+        when(request.getMethod()).thenReturn("GET");
+
+        // The inbound logic of the cacheable filter runs first, whether or not its output is cached
+        FormEntity rslt = fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals("Students", rslt.getMetadata().path("group").asText());
+        assertTrue(rslt.getMetadata().path("enriched").asBoolean());
+        rslt = fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals("Students", rslt.getMetadata().path("group").asText());
+        assertTrue(rslt.getMetadata().path("enriched").asBoolean());
+        assertEquals(Arrays.asList("enriching", "trimming", "enriching", "trimming"), events);
+        assertEquals(1, enrichments.get());
+
+        // Output for a different entity from the rest of the chain is not reused
+        group[0] = "Faculty";
+        rslt = fromSupplier(formMetedata, request, response, () -> form(1)).get();
+        assertEquals("Faculty", rslt.getMetadata().path("group").asText());
+        assertEquals(2, enrichments.get());
+    }
+
+    @Test
+    public void cacheableFilterKeyDoesNotMaterializeTest() {
+        final AtomicInteger invocations = new AtomicInteger();
+        final CacheableExtensionFilter<FormEntity> passive = new CacheableExtensionFilter<FormEntity>() {
+            @Override
+            public Object getCacheKey(ExtensionFilterChainMetadata metadata, FormEntity entity, HttpServletRequest request) {
+                return "everyone";
+            }
+            @Override
+            public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                    ExtensionFilterChain<FormEntity> chain) {
+                final FormEntity rslt = chain.doFilter(entity);
+                invocations.incrementAndGet();
+                return rslt;
+            }
+            @Override
+            public int getOrder() {
+                return ExtensionFilter.ORDER_NORMAL;
+            }
+        };
+        setFilters(Collections.singletonList(passive));
+        initResults(1000000L, 0L);
+        when(request.getMethod()).thenReturn("GET");
+
+        final List<FormEntity> supplied = new ArrayList<>();
+        final Supplier<FormEntity> stored = () -> {
+            final FormEntity rslt = form(1);
+            rslt.setStoredSchema(StoredJson.ofEncoded("{\"title\":\"Survey\"}"));
+            supplied.add(rslt);
+            return rslt;
+        };
+        fromSupplier(formMetedata, request, response, stored).get();
+        final FormEntity cached = fromSupplier(formMetedata, request, response, stored).get();
+        assertEquals(1, invocations.get());
+        assertEquals("Survey", cached.getSchema().path("title").asText());
+        for (FormEntity form : supplied) {
+            assertFalse(form.getStoredSchema().isMaterialized());
+        }
+
+        // Different content under the same id is not confused with the cached content
+        final FormEntity other = fromSupplier(formMetedata, request, response, () -> {
+            final FormEntity rslt = form(1);
+            rslt.setStoredSchema(StoredJson.ofEncoded("{\"title\":\"Poll\"}"));
+            return rslt;
+        }).get();
+        assertEquals(2, invocations.get());
+        assertEquals("Poll", other.getSchema().path("title").asText());
+    }
+
+    @Test
+    public void applicableFiltersTest() {
+        final AtomicInteger checks = new AtomicInteger();
+        final ExtensionFilter<FormEntity> dynamic =
+                new AbstractTestExtensionFilter<FormEntity>("dynamic", ExtensionFilter.ORDER_NORMAL) {
+            @Override
+            public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+                checks.incrementAndGet();
+                return true;
+            }
+        };
+        setFilters(Collections.singletonList(dynamic));
+
+        final ApplicableFilters applicable = getApplicableFilters(formMetedata, null, request);
+        assertFalse(applicable.isEmpty());
+        fromSupplier(applicable, request, response, () -> null).get();
+
+        // The dynamic check is evaluated once, and the selection builds the chain
+        assertEquals(1, checks.get());
+        assertArrayEquals(new Object[] { dynamic }, accumulatedFilters.toArray());
+    }
+
+    @Test
+    public void outcomeTest() throws Exception {
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final Field field = ExtensionFilterChainBuilder.class.getDeclaredField("meterRegistry");
+        field.setAccessible(true);
+        field.set(this, meterRegistry);
+        final ExtensionFilter<FormEntity> failing = new FailingExtensionFilter(new AtomicInteger(), null);
+        setFilters(Arrays.asList(veryEarlyAllEntities, failing));
+        init();
+
+        assertThrows(IllegalStateException.class, fromSupplier(formMetedata, request, response, () -> null)::get);
+
+        // Only the filter that threw the exception reports it as its own
+        assertNotNull(meterRegistry.find("fbms.filters.total")
+                .tags("filter", failing.getClass().getSimpleName(), "outcome", "errored").timer());
+        assertNotNull(meterRegistry.find("fbms.filters.total")
+                .tags("filter", veryEarlyAllEntities.getClass().getName(), "outcome", "downstreamFailed").timer());
+        assertNull(meterRegistry.find("fbms.filters.total").tags("outcome", "aborted").timer());
+    }
+
+    /*
+     * Implementation
+     */
+
+    private static FormEntity form(int version) {
+        final FormIdentifier id = new FormIdentifier();
+        id.setFname("test");
+        id.setVersion(version);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id);
+        return rslt;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
     /*
      * Nested Types
      */
 
+    private static final class FailingExtensionFilter extends AbstractExtensionFilter<FormEntity> {
+
+        private final AtomicInteger invocations;
+        private final ExtensionFilterPolicy policy;
+
+        public FailingExtensionFilter(AtomicInteger invocations, ExtensionFilterPolicy policy) {
+            this.invocations = invocations;
+            this.policy = policy;
+        }
+
+        @Override
+        public ExtensionFilterPolicy getPolicy() {
+            return policy;
+        }
+
+        @Override
+        public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+            return true;
+        }
+
+        @Override
+        public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                ExtensionFilterChain<FormEntity> chain) {
+            invocations.incrementAndGet();
+            throw new IllegalStateException("The downstream system is unavailable");
+        }
+
+    }
+
+    private static final class SlowExtensionFilter extends AbstractExtensionFilter<FormEntity> {
+
+        private final AtomicInteger invocations;
+        private final ExtensionFilterPolicy policy;
+        private final Runnable work;
+
+        public SlowExtensionFilter(AtomicInteger invocations, ExtensionFilterPolicy policy, Runnable work) {
+            this.invocations = invocations;
+            this.policy = policy;
+            this.work = work;
+        }
+
+        @Override
+        public ExtensionFilterPolicy getPolicy() {
+            return policy;
+        }
+
+        @Override
+        public boolean appliesTo(ExtensionFilterChainMetadata metadata, FbmsEntity entity, HttpServletRequest request) {
+            return true;
+        }
+
+        @Override
+        public FormEntity doFilter(FormEntity entity, HttpServletRequest request, HttpServletResponse response,
+                ExtensionFilterChain<FormEntity> chain) {
+            invocations.incrementAndGet();
+            work.run();
+            return chain.doFilter(entity);
+        }
+
+    }
+
     private /* non-static */ abstract class AbstractTestExtensionFilter<E extends FbmsEntity> extends AbstractExtensionFilter<E> {
 
         private final String name;
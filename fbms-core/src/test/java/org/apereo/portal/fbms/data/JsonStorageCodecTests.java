@@ -0,0 +1,122 @@
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the {@link JsonStorageCodec} to insure every codec can read values written by
+ * every other codec, including the original plain-text format, and that the codecs it accepts
+ * actually save space.
+ */
+@RunWith(JUnitPlatform.class)
+public class JsonStorageCodecTests {
+
+    private static final String JSON = "{\"title\":\"Survey\",\"properties\":{\"name\":{\"type\":\"string\"}," +
+            "\"age\":{\"type\":\"integer\",\"minimum\":0}},\"required\":[\"name\"]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void defaultCodecWritesPlainJsonTest() throws IOException {
+        final JsonNode node = objectMapper.readTree(JSON);
+        assertEquals(JSON, JsonStorageCodec.DEFAULT.encode(node));
+        assertEquals(node, JsonStorageCodec.decode(JSON));
+    }
+
+    @Test
+    public void everyCodecRoundTripsTest() throws IOException {
+        final JsonNode node = objectMapper.readTree(JSON);
+        for (JsonStorageCodec.Format format : JsonStorageCodec.Format.values()) {
+            for (JsonStorageCodec.Compression compression : JsonStorageCodec.Compression.values()) {
+                if (format != JsonStorageCodec.Format.JSON && compression == JsonStorageCodec.Compression.NONE) {
+                    continue; // Rejected;  see below
+                }
+                final JsonStorageCodec codec = new JsonStorageCodec(format, compression);
+                final String encoded = codec.encode(node);
+                assertEquals(node, JsonStorageCodec.decode(encoded), codec.toString());
+                assertTrue(codec.isEncodedWith(encoded), codec.toString());
+            }
+        }
+    }
+
+    @Test
+    public void recognizesOtherEncodingsTest() throws IOException {
+        final JsonNode node = objectMapper.readTree(JSON);
+        final JsonStorageCodec smileLz4 =
+                new JsonStorageCodec(JsonStorageCodec.Format.SMILE, JsonStorageCodec.Compression.LZ4);
+        final JsonStorageCodec smileDeflate =
+                new JsonStorageCodec(JsonStorageCodec.Format.SMILE, JsonStorageCodec.Compression.DEFLATE);
+        assertFalse(smileLz4.isEncodedWith(JSON));
+        assertFalse(smileLz4.isEncodedWith(smileDeflate.encode(node)));
+        assertFalse(JsonStorageCodec.DEFAULT.isEncodedWith(smileLz4.encode(node)));
+    }
+
+    @Test
+    public void uncompressedBinaryFormatsTest() throws IOException {
+        for (JsonStorageCodec.Format format : JsonStorageCodec.Format.values()) {
+            if (format != JsonStorageCodec.Format.JSON) {
+                assertThrows(IllegalArgumentException.class,
+                        () -> new JsonStorageCodec(format, JsonStorageCodec.Compression.NONE));
+            }
+        }
+        // Values written uncompressed (by earlier versions) remain readable
+        final JsonNode node = objectMapper.readTree(JSON);
+        assertEquals(node, JsonStorageCodec.decode(uncompressedSmile(node)));
+    }
+
+    @Test
+    public void exampleFormSizesTest() throws IOException {
+        int examples = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(examplesDirectory(), "*.json")) {
+            for (Path path : paths) {
+                final JsonNode node = objectMapper.readTree(path.toFile());
+                final int plainSize = JsonStorageCodec.DEFAULT.encode(node).length();
+                assertTrue(uncompressedSmile(node).length() > plainSize,
+                        "Uncompressed Smile should be larger than JSON text for " + path);
+                for (JsonStorageCodec.Format format : JsonStorageCodec.Format.values()) {
+                    final JsonStorageCodec codec =
+                            new JsonStorageCodec(format, JsonStorageCodec.Compression.DEFLATE);
+                    assertTrue(codec.encode(node).length() < plainSize, codec + " for " + path);
+                }
+                ++examples;
+            }
+        }
+        assertTrue(examples > 0);
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * The format written by earlier versions for <code>format=smile</code> and
+     * <code>compression=none</code>.
+     */
+    private static String uncompressedSmile(JsonNode node) throws IOException {
+        final byte[] bytes = new ObjectMapper(new SmileFactory()).writeValueAsBytes(node);
+        return "$smile:" + Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static Path examplesDirectory() {
+        // Tests may run from the module or the root project directory
+        final Path rslt = Paths.get("docs", "examples");
+        return Files.isDirectory(rslt) ? rslt : Paths.get("..", "docs", "examples");
+    }
+
+}
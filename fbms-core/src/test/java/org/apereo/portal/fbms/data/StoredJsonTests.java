@@ -0,0 +1,66 @@
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the {@link StoredJson} to insure that describing and weighing a value neither
+ * materializes it nor resolves a reference to the {@link JsonContentStore}, and that reading a
+ * value does not change what is written back to the database.
+ */
+@RunWith(JUnitPlatform.class)
+public class StoredJsonTests {
+
+    private static final String JSON = "{\"name\":\"Survey\"}";
+
+    private static final String REFERENCE = "#sha256:0123456789abcdef";
+
+    @Test
+    public void plainTextTest() {
+        final StoredJson storedJson = StoredJson.ofEncoded(JSON);
+        assertEquals(JSON.length(), storedJson.estimateSize());
+        assertTrue(storedJson.toString().contains("header=json"));
+        assertFalse(storedJson.toString().contains("Survey"));
+        assertFalse(storedJson.isMaterialized());
+    }
+
+    @Test
+    public void referenceTest() {
+        // No JsonContentStore is available;  resolving the reference would fail
+        final StoredJson storedJson = StoredJson.ofEncoded(REFERENCE);
+        assertEquals(REFERENCE.length(), storedJson.estimateSize());
+        assertTrue(storedJson.toString().contains(REFERENCE));
+        assertFalse(storedJson.isMaterialized());
+    }
+
+    @Test
+    public void encodeTest() {
+        final JsonStorageCodec previous = JsonStorageCodec.getCurrent();
+        JsonStorageCodec.setCurrent(new JsonStorageCodec(JsonStorageCodec.Format.SMILE,
+                JsonStorageCodec.Compression.LZ4));
+        try {
+            // Materialized, but not modified:  written back as it was stored
+            final StoredJson read = StoredJson.ofEncoded(JSON);
+            assertEquals("Survey", read.get().get("name").asText());
+            assertTrue(read.isMaterialized());
+            assertEquals(JSON, read.encode());
+
+            // Modified:  written with the current codec
+            ((ObjectNode) read.get()).put("name", "Poll");
+            final String encoded = read.encode();
+            assertNotEquals(JSON, encoded);
+            assertTrue(JsonStorageCodec.getCurrent().isEncodedWith(encoded));
+            assertEquals("Poll", JsonStorageCodec.decode(encoded).get("name").asText());
+        } finally {
+            JsonStorageCodec.setCurrent(previous);
+        }
+    }
+
+}
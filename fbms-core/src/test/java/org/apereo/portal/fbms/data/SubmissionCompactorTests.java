@@ -0,0 +1,63 @@
+package org.apereo.portal.fbms.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the {@link SubmissionCompactor} to insure that retention policies are parsed
+ * correctly and never allow the deletion of submissions they retain.
+ */
+@RunWith(JUnitPlatform.class)
+public class SubmissionCompactorTests {
+
+    private static final long NOW = System.currentTimeMillis();
+
+    @Test
+    public void parsePoliciesTest() {
+        assertTrue(SubmissionCompactor.parsePolicies(null).isEmpty());
+        assertTrue(SubmissionCompactor.parsePolicies(" ").isEmpty());
+
+        final Map<String,SubmissionCompactor.RetentionPolicy> policies =
+                SubmissionCompactor.parsePolicies("survey:3:0, consent : 1 : 365");
+        assertEquals(2, policies.size());
+        assertEquals(3, policies.get("survey").getKeepLatest());
+        assertEquals(1, policies.get("consent").getKeepLatest());
+        assertEquals(new Date(NOW - TimeUnit.DAYS.toMillis(365)), policies.get("consent").getCutoff(NOW));
+    }
+
+    @Test
+    public void invalidPoliciesTest() {
+        assertThrows(IllegalArgumentException.class, () -> SubmissionCompactor.parsePolicies("survey:3"));
+        assertThrows(IllegalArgumentException.class, () -> SubmissionCompactor.parsePolicies("survey:three:0"));
+        // The most recent submission must always be retained
+        assertThrows(IllegalArgumentException.class, () -> SubmissionCompactor.parsePolicies("survey:0:0"));
+        assertThrows(IllegalArgumentException.class, () -> SubmissionCompactor.parsePolicies("survey:1:-1"));
+    }
+
+    @Test
+    public void thresholdTest() {
+        final Date lastWeek = new Date(NOW - TimeUnit.DAYS.toMillis(7));
+
+        // No age-based retention:  only the most recent are retained
+        final SubmissionCompactor.RetentionPolicy latestOnly = new SubmissionCompactor.RetentionPolicy(1, 0);
+        assertEquals(lastWeek, latestOnly.getThreshold(lastWeek, NOW));
+
+        // Submissions less than 30 days old are retained, even though they are not the most recent
+        final SubmissionCompactor.RetentionPolicy thirtyDays = new SubmissionCompactor.RetentionPolicy(1, 30);
+        assertEquals(new Date(NOW - TimeUnit.DAYS.toMillis(30)), thirtyDays.getThreshold(lastWeek, NOW));
+
+        // The most recent are retained, even though they are older than 1 day
+        final SubmissionCompactor.RetentionPolicy oneDay = new SubmissionCompactor.RetentionPolicy(1, 1);
+        assertEquals(lastWeek, oneDay.getThreshold(lastWeek, NOW));
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class tests the {@link SubmissionWriter} to insure that queued submissions are retried after
+ * temporary failures, reported (not silently dropped) after permanent ones, and passed to
+ * post-commit filters only once they have been written.
+ */
+@RunWith(JUnitPlatform.class)
+public class SubmissionWriterTests {
+
+    private static final String USERNAME = "student";
+    private static final String FNAME = "test-form";
+
+    private SubmissionWriter writer;
+
+    private SubmissionBatchInserter batchInserter = mock(SubmissionBatchInserter.class);
+
+    private PostCommitFilterExecutor postCommitFilterExecutor = mock(PostCommitFilterExecutor.class);
+
+    private HttpServletRequest request = mock(HttpServletRequest.class);
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        writer = new SubmissionWriter();
+        set("enabled", true);
+        set("queueCapacity", 10);
+        set("batchSize", 10);
+        set("drainTimeoutSeconds", 5L);
+        set("retryDelayMillis", 10L);
+        set("maxRetryDelayMillis", 10L);
+        set("batchInserter", batchInserter);
+        set("postCommitFilterExecutor", postCommitFilterExecutor);
+        writer.init();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        writer.destroy();
+    }
+
+    @Test
+    public void transientFailureIsRetriedTest() throws Exception {
+        final AtomicReference<SubmissionEntity> pendingDuringRetry = new AtomicReference<>();
+        final CountDownLatch written = new CountDownLatch(1);
+        when(batchInserter.insert(anyList()))
+                .thenReturn(Collections.<RuntimeException>singletonList(new CannotGetJdbcConnectionException("Down")))
+                .thenAnswer(invocation -> {
+                    pendingDuringRetry.set(writer.getPending(USERNAME, FNAME));
+                    written.countDown();
+                    return Collections.<RuntimeException>singletonList(null);
+                });
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        writer.addFailureListener(submission -> failed.countDown());
+
+        writer.enqueue(submission(), request);
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertNotNull(pendingDuringRetry.get(), "The submission must stay visible while it is retried");
+
+        writer.destroy();
+        verify(batchInserter, times(2)).insert(anyList());
+        assertNull(writer.getPending(USERNAME, FNAME));
+        assertFalse(failed.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void permanentFailureIsReportedTest() throws Exception {
+        when(batchInserter.insert(anyList()))
+                .thenReturn(Collections.<RuntimeException>singletonList(new DataIntegrityViolationException("Duplicate")));
+
+        final AtomicReference<SubmissionEntity> reported = new AtomicReference<>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        writer.addFailureListener(submission -> {
+            reported.set(submission);
+            failed.countDown();
+        });
+
+        writer.enqueue(submission(), request);
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertEquals(FNAME, reported.get().getId().getFname());
+        assertNull(writer.getPending(USERNAME, FNAME));
+        verify(batchInserter, times(1)).insert(anyList());
+    }
+
+    @Test
+    public void postCommitFiltersRunAfterWriteTest() throws Exception {
+        final AtomicBoolean inserted = new AtomicBoolean();
+        final AtomicBoolean insertedBeforeDispatch = new AtomicBoolean();
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        when(postCommitFilterExecutor.prepare(any(), any(), any())).thenReturn(() -> {
+            insertedBeforeDispatch.set(inserted.get());
+            dispatched.countDown();
+        });
+        when(batchInserter.insert(anyList()))
+                .thenReturn(Collections.<RuntimeException>singletonList(new CannotGetJdbcConnectionException("Down")))
+                .thenAnswer(invocation -> {
+                    inserted.set(true);
+                    return Collections.<RuntimeException>singletonList(null);
+                });
+
+        writer.enqueue(submission(), request);
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        assertTrue(insertedBeforeDispatch.get());
+    }
+
+    @Test
+    public void noPostCommitFiltersForLostSubmissionsTest() throws Exception {
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        when(postCommitFilterExecutor.prepare(any(), any(), any())).thenReturn(dispatched::countDown);
+        when(batchInserter.insert(anyList()))
+                .thenReturn(Collections.<RuntimeException>singletonList(new DataIntegrityViolationException("Duplicate")));
+        final CountDownLatch failed = new CountDownLatch(1);
+        writer.addFailureListener(submission -> failed.countDown());
+
+        writer.enqueue(submission(), request);
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        writer.destroy();
+        assertFalse(dispatched.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void isTransientTest() {
+        assertTrue(SubmissionWriter.isTransient(new CannotGetJdbcConnectionException("Down")));
+        assertTrue(SubmissionWriter.isTransient(new CannotCreateTransactionException("Down")));
+        assertTrue(SubmissionWriter.isTransient(new TransientDataAccessResourceException("Busy")));
+        assertFalse(SubmissionWriter.isTransient(new DataIntegrityViolationException("Duplicate")));
+        assertFalse(SubmissionWriter.isTransient(new IllegalStateException()));
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void set(String name, Object value) throws Exception {
+        final Field field = SubmissionWriter.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(writer, value);
+    }
+
+    private static SubmissionEntity submission() {
+        final SubmissionIdentifier id = new SubmissionIdentifier();
+        id.setUsername(USERNAME);
+        id.setFname(FNAME);
+        id.setVersion(1);
+        id.setTimestamp(new Date());
+        final SubmissionEntity rslt = new SubmissionEntity();
+        rslt.setId(id);
+        rslt.setAnswers(JsonNodeFactory.instance.objectNode());
+        return rslt;
+    }
+
+}
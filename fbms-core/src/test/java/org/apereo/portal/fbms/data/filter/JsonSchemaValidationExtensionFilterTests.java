@@ -0,0 +1,133 @@
+package org.apereo.portal.fbms.data.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.LatestFormCache;
+import org.apereo.portal.fbms.data.SubmissionEntity;
+import org.apereo.portal.fbms.data.SubmissionIdentifier;
+import org.apereo.portal.fbms.util.MessageServices;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class tests the {@link JsonSchemaValidationExtensionFilter} to insure that it rejects invalid
+ * submissions, and that it compiles the schema of each form version at most once, even when the
+ * schema cannot be compiled.
+ */
+@RunWith(JUnitPlatform.class)
+public class JsonSchemaValidationExtensionFilterTests {
+
+    private static final String FNAME = "test-form";
+
+    private static final String SCHEMA = "{\"type\":\"object\",\"required\":[\"name\"]}";
+
+    private static final String UNKNOWN_SCHEMA = "{\"$schema\":\"http://example.com/unknown-schema#\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonSchemaValidationExtensionFilter filter;
+
+    private LatestFormCache latestFormCache = mock(LatestFormCache.class);
+
+    private FormRepository formRepository = mock(FormRepository.class);
+
+    private HttpServletRequest request = mock(HttpServletRequest.class);
+
+    private HttpServletResponse response = mock(HttpServletResponse.class);
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        filter = new JsonSchemaValidationExtensionFilter();
+        set("enabled", true);
+        set("maximumCachedValidators", 10L);
+        set("latestFormCache", latestFormCache);
+        set("formRepository", formRepository);
+        set("messageServices", mock(MessageServices.class));
+        filter.init();
+    }
+
+    @Test
+    public void invalidSubmissionTest() throws Exception {
+        when(latestFormCache.getLatest(FNAME)).thenReturn(form(SCHEMA));
+        final SubmissionEntity valid = submission("{\"name\":\"Alice\"}");
+        assertSame(valid, filter.doFilter(valid, request, response, e -> e));
+        assertThrows(ExtensionFilterChainAbortException.class,
+                () -> filter.doFilter(submission("{}"), request, response, e -> e));
+        verify(latestFormCache, times(1)).getLatest(FNAME);
+    }
+
+    @Test
+    public void uncompilableSchemaIsRememberedTest() throws Exception {
+        when(latestFormCache.getLatest(FNAME)).thenReturn(form(UNKNOWN_SCHEMA));
+        for (int i = 0; i < 3; i++) {
+            final SubmissionEntity submission = submission("{}");
+            assertSame(submission, filter.doFilter(submission, request, response, e -> e));
+        }
+        verify(latestFormCache, times(1)).getLatest(FNAME);
+    }
+
+    @Test
+    public void missingFormIsNotRememberedTest() throws Exception {
+        when(formRepository.findById(any())).thenReturn(Optional.empty());
+        for (int i = 0; i < 2; i++) {
+            final SubmissionEntity submission = submission("{}");
+            assertSame(submission, filter.doFilter(submission, request, response, e -> e));
+        }
+        verify(formRepository, times(2)).findById(any());
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void set(String name, Object value) throws Exception {
+        final Field field = JsonSchemaValidationExtensionFilter.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(filter, value);
+    }
+
+    private FormEntity form(String schema) throws IOException {
+        final FormIdentifier id = new FormIdentifier();
+        id.setFname(FNAME);
+        id.setVersion(1);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id);
+        rslt.setSchema(objectMapper.readTree(schema));
+        return rslt;
+    }
+
+    private SubmissionEntity submission(String answers) throws IOException {
+        final SubmissionIdentifier id = new SubmissionIdentifier();
+        id.setUsername("student");
+        id.setFname(FNAME);
+        id.setVersion(1);
+        id.setTimestamp(new Date());
+        final SubmissionEntity rslt = new SubmissionEntity();
+        rslt.setId(id);
+        final JsonNode node = objectMapper.readTree(answers);
+        rslt.setAnswers(node);
+        return rslt;
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.apereo.portal.fbms.data.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.StoredJson;
+import org.apereo.portal.fbms.util.UserServices;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class tests the {@link RoleBasedSchemaTrimmingExtensionFilter} to insure that the trimmed
+ * schemas it caches are not exposed to modification by other filters, and that serving them
+ * neither copies nor parses JSON.
+ */
+@RunWith(JUnitPlatform.class)
+public class RoleBasedSchemaTrimmingExtensionFilterTests {
+
+    private static final String FNAME = "test-form";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RoleBasedSchemaTrimmingExtensionFilter filter;
+
+    private HttpServletRequest request = mock(HttpServletRequest.class);
+
+    private HttpServletResponse response = mock(HttpServletResponse.class);
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        filter = new RoleBasedSchemaTrimmingExtensionFilter(FNAME,
+                Collections.singletonList("Students"),
+                Collections.singletonMap("/properties", Collections.singletonList("secret")),
+                false);
+
+        final UserServices userServices = mock(UserServices.class);
+        when(userServices.getUsername(any())).thenReturn("student");
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Students"));
+        final Field field = RoleBasedSchemaTrimmingExtensionFilter.class.getDeclaredField("userServices");
+        field.setAccessible(true);
+        field.set(filter, userServices);
+    }
+
+    @Test
+    public void cachedSchemaIsNotSharedTest() throws Exception {
+        final FormEntity first = filter.doFilter(null, request, response, e -> form());
+        assertFalse(first.getSchema().path("properties").has("secret"));
+
+        // An outer filter modifies the schema on the way out...
+        ((ObjectNode) first.getSchema().get("properties")).putObject("added");
+
+        // ...which must not affect the next user
+        final FormEntity second = filter.doFilter(null, request, response, e -> form());
+        assertFalse(second.getSchema().path("properties").has("added"));
+        assertFalse(second.getSchema().path("properties").has("secret"));
+        assertTrue(second.getSchema().path("properties").has("visible"));
+    }
+
+    @Test
+    public void trimmedSchemaIsNotParsedTest() {
+        final StoredJson metadata = StoredJson.ofEncoded("{\"owner\":\"Registrar\"}");
+        filter.doFilter(null, request, response, e -> form()); // Computes the trimmed schema
+
+        final FormEntity form = form();
+        form.setStoredMetadata(metadata);
+        final FormEntity rslt = filter.doFilter(null, request, response, e -> form);
+        assertFalse(form.getStoredSchema().isMaterialized());
+        assertFalse(rslt.getStoredSchema().isMaterialized());
+        assertSame(metadata, rslt.getStoredMetadata());
+        assertFalse(metadata.isMaterialized());
+        assertFalse(rslt.getSchema().path("properties").has("secret"));
+    }
+
+    @Test
+    public void cacheNamesAreUniqueTest() throws Exception {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final Field field = RoleBasedSchemaTrimmingExtensionFilter.class.getDeclaredField("meterRegistry");
+        field.setAccessible(true);
+        for (boolean inverseFlag : new boolean[] { false, true }) {
+            final RoleBasedSchemaTrimmingExtensionFilter f = new RoleBasedSchemaTrimmingExtensionFilter(FNAME,
+                    Collections.singletonList("Students"),
+                    Collections.singletonMap("/properties", Collections.singletonList("secret")),
+                    inverseFlag);
+            field.set(f, meterRegistry);
+            f.init();
+        }
+        assertEquals(2, meterRegistry.find("fbms.cache.size").gauges().size());
+    }
+
+    /*
+     * Implementation
+     */
+
+    private FormEntity form() {
+        final FormIdentifier id = new FormIdentifier();
+        id.setFname(FNAME);
+        id.setVersion(1);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id);
+        try {
+            final JsonNode schema = objectMapper.readTree(
+                    "{\"properties\":{\"visible\":{\"type\":\"string\"},\"secret\":{\"type\":\"string\"}}}");
+            // As read from the database
+            rslt.setStoredSchema(StoredJson.ofEncoded(schema.toString()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return rslt;
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.apereo.portal.fbms.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the {@link BoundedCache} to insure it respects its bounds and keeps accurate
+ * statistics.
+ */
+@RunWith(JUnitPlatform.class)
+public class BoundedCacheTests {
+
+    @Test
+    public void respectsMaximumSizeTest() {
+        final BoundedCache<String,String> cache = new BoundedCache<>("test", 2L, 0L);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.getEvictionCount());
+    }
+
+    @Test
+    public void respectsWeightTest() {
+        final BoundedCache<String,String> cache = new BoundedCache<>("test", 10L, 0L, String::length);
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        assertEquals(10L, cache.getWeight());
+
+        cache.put("c", "123");
+        assertTrue(cache.getWeight() <= 10L);
+        assertEquals(1L, cache.getEvictionCount());
+
+        // Values heavier than the maximum are never stored
+        final long weight = cache.getWeight();
+        cache.put("d", "12345678901");
+        assertNull(cache.get("d"));
+        assertEquals(weight, cache.getWeight());
+    }
+
+    @Test
+    public void expiresEntriesTest() {
+        final long[] now = { 1000L };
+        final BoundedCache<String,String> cache = new BoundedCache<String,String>("test", 10L, 100L) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        cache.put("a", "A");
+        now[0] += 99L;
+        assertEquals("A", cache.get("a"));
+        now[0] += 2L;
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.getExpirationCount());
+    }
+
+    @Test
+    public void invalidateByPredicateTest() {
+        final BoundedCache<String,String> cache = new BoundedCache<>("test", 10L, 0L);
+        cache.put("a1", "A");
+        cache.put("a2", "A");
+        cache.put("b1", "B");
+        cache.invalidateAll(key -> key.startsWith("a"));
+        assertNull(cache.get("a1"));
+        assertNull(cache.get("a2"));
+        assertEquals("B", cache.get("b1"));
+    }
+
+    @Test
+    public void mergeTest() {
+        final BoundedCache<String,Integer> cache = new BoundedCache<>("test", 10L, 0L);
+        assertEquals(Integer.valueOf(2), cache.merge("a", 2, Math::max));
+        assertEquals(Integer.valueOf(2), cache.merge("a", 1, Math::max));
+        assertEquals(Integer.valueOf(3), cache.merge("a", 3, Math::max));
+        assertEquals(Integer.valueOf(3), cache.get("a"));
+    }
+
+    @Test
+    public void zeroMaximumWeightTest() {
+        // A maximum weight of zero disables the cache, but callers still receive their values
+        final BoundedCache<String,Integer> cache = new BoundedCache<>("test", 0L, 0L);
+        assertEquals(Integer.valueOf(2), cache.merge("a", 2, Math::max));
+        assertEquals(Integer.valueOf(3), cache.get("b", key -> 3));
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void statisticsTest() {
+        final BoundedCache<String,String> cache = new BoundedCache<>("test", 10L, 0L);
+        cache.get("a");
+        cache.get("a", key -> "A");
+        cache.get("a");
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(2L, cache.getMissCount());
+    }
+
+}
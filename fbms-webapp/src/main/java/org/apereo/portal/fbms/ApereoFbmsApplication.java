@@ -22,8 +22,10 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 @PropertySources({
 		@PropertySource(value = "classpath:fbms.properties"), // Must not be application.properties (https://stackoverflow.com/questions/42339226/spring-propertysources-value-not-overriding)
 		@PropertySource(value = "file:${portal.home}/global.properties", ignoreResourceNotFound = true), // Higher-priority
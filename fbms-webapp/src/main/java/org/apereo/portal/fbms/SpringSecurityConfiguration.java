@@ -78,6 +78,12 @@ public class SpringSecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Value("${org.apereo.portal.fbms.security.readOthersAuthority:" +  PORTAL_ADMINISTRATORS_AUTHORITY + "}")
     private String readOthersAuthority;
 
+    /**
+     * Comma-separated list of authorities (uPortal groups) that have access to import submissions in bulk.
+     */
+    @Value("${org.apereo.portal.fbms.security.importAuthority:" +  PORTAL_ADMINISTRATORS_AUTHORITY + "}")
+    private String importAuthority;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
 
@@ -126,6 +132,7 @@ public class SpringSecurityConfiguration extends WebSecurityConfigurerAdapter {
                  * Authenticated users may read from the /forms enpoints, but only privileged users
                  * may create/update/delete.
                  */
+                .antMatchers(HttpMethod.GET,"/api/v1/forms").authenticated()
                 .antMatchers(HttpMethod.GET,"/api/v1/forms/*").authenticated()
                 .antMatchers(HttpMethod.POST,"/api/v1/forms/*").hasAuthority(createAuthority)
                 .antMatchers(HttpMethod.PUT,"/api/v1/forms/*").hasAuthority(updateAuthority)
@@ -136,6 +143,13 @@ public class SpringSecurityConfiguration extends WebSecurityConfigurerAdapter {
                  */
                 .antMatchers(HttpMethod.GET,"/api/v1/submissions/*/users/*").hasAuthority(readOthersAuthority)
 
+                /*
+                 * Privileged users may import submissions in bulk.  Matched the way Spring MVC
+                 * matches the handler (e.g. with a trailing slash), so that no variant of this URI
+                 * falls through to the rule for individual submissions below.
+                 */
+                .mvcMatchers(HttpMethod.POST,"/api/v1/submissions").hasAuthority(importAuthority)
+
                 /*
                  * Authenticated users may create & read their own submissions.
                  */
@@ -18,32 +18,57 @@
  */
 package org.apereo.portal.fbms.api.v1;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
 import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
+import org.apereo.portal.fbms.data.ExtensionFilterUnavailableException;
 import org.apereo.portal.fbms.data.FormEntity;
 import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.FormSummary;
+import org.apereo.portal.fbms.data.FormVersionConflictException;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
+import org.apereo.portal.fbms.data.LatestFormCache;
+import org.apereo.portal.fbms.data.StoredJson;
 import org.apereo.portal.fbms.util.FnameValidator;
 import org.apereo.portal.fbms.util.MessageServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
 /**
  * REST endpoints for accessing and manipulating {@link RestV1Form} objects.
@@ -55,6 +80,18 @@ public class FormsRestController {
 
     public static final String API_ROOT = "/api/v1/forms";
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAXIMUM_PAGE_SIZE = 1000;
+
+    private static final String INCLUDE_SCHEMA = "schema";
+
+    /**
+     * Clients may keep forms, but must revalidate them (using the ETag) before each use.  Responses
+     * may be trimmed or otherwise adjusted for the user by filters, so they are private.
+     */
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     @Autowired
     private FnameValidator fnameValidator;
 
@@ -64,32 +101,153 @@ public class FormsRestController {
     @Autowired
     private FormRepository formRepository;
 
+    @Autowired
+    private FormVersionRegistry formVersionRegistry;
+
+    @Autowired
+    private LatestFormCache latestFormCache;
+
+    @Autowired
+    private SerializedFormCache serializedFormCache;
+
     @Autowired
     private ExtensionFilterChainBuilder filterChainBuilder;
 
     @Autowired
     private MessageServices messageServices;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    /**
+     * Configured the same way as the ObjectMapper in Spring MVC's message converter.
+     */
+    private final ObjectMapper listingObjectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    /**
+     * The endStateFormEntity never changes, so we serialize it once.
+     */
+    private SerializedFormCache.SerializedForm serializedEndStateForm;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @PostConstruct
+    public void init() {
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        if (serializedFormCache.isEnabled()) {
+            serializedEndStateForm = serializedFormCache.encode(endStateFormEntity);
+        }
+    }
+
     /**
-     * Provides a collection of forms that are viewable by the present user.
+     * Provides a collection of forms that are viewable by the present user.  Lists the current
+     * version of each form in fname order, one page at a time (keyset pagination).  By default
+     * each element is a {@link RestV1FormSummary};  specify <code>include=schema</code> to receive
+     * complete {@link RestV1Form} objects instead.  When there may be more forms, the response
+     * includes a <code>Link</code> header (<code>rel="next"</code>) to the next page.
+     *
+     * <p>Complete forms pass through the extension filters, exactly as when they are requested
+     * individually, so that (e.g.) trimmed schemas are trimmed here as well.  A form that a filter
+     * withholds from the user is omitted, so a page may contain fewer than <code>limit</code> forms.
+     *
+     * <p>The response is streamed from the database to the client one form at a time, so memory
+     * use does not depend on the number of forms.  Specify <code>limit=0</code> to list every form
+     * in a single response.
+     *
+     * @param after Lists forms with an fname that sorts after this one (i.e. the last fname of
+     * the previous page);  optional
+     * @param limit The maximum number of forms in the page, or zero for no maximum
+     * @param include Specify <code>schema</code> for complete forms;  optional
      */
     @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity listForms() {
-        final List<RestV1Form> rslt = StreamSupport.stream(formRepository.findAll().spliterator(), false)
-                .map(RestV1Form::fromEntity)
-                .collect(Collectors.toList());
+    public ResponseEntity listForms(@RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(value = "include", required = false) String include,
+            HttpServletRequest request, HttpServletResponse response) {
+
+        if (limit < 0 || limit > MAXIMUM_PAGE_SIZE) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("The limit must be between 0 (no limit) and " + MAXIMUM_PAGE_SIZE + ";  was " + limit);
+        }
+        if (include != null && !INCLUDE_SCHEMA.equals(include)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("Unsupported value for include:  " + include);
+        }
 
-        // TODO:  Should return the URIs of the objects, not the objects themselves.
+        /*
+         * Headers precede the body, so we must know whether there's another page before we start
+         * streaming;  the fname at the end of a full page comes from FBMS_FORM_HEAD alone.
+         */
+        if (limit != 0) {
+            final List<String> lastFnameOfFullPage =
+                    formRepository.findFnamesAfter(after, PageRequest.of(limit - 1, 1));
+            if (!lastFnameOfFullPage.isEmpty()) {
+                final String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", lastFnameOfFullPage.get(0))
+                        .build()
+                        .toUriString();
+                response.setHeader(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+        }
 
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(rslt);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+        // Streaming queries require a transaction to keep the connection open
+        final boolean includeSchema = INCLUDE_SCHEMA.equals(include);
+        readOnlyTransactionTemplate.execute(status -> {
+            try (JsonGenerator generator = listingObjectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                if (includeSchema) {
+                    try (Stream<FormEntity> forms = formRepository.streamCurrentAfter(after)) {
+                        final Iterator<FormEntity> iterator = limit != 0
+                                ? forms.limit(limit).iterator()
+                                : forms.iterator();
+                        while (iterator.hasNext()) {
+                            final FormEntity form = iterator.next();
+                            entityManager.detach(form); // Keep the persistence context from growing
+                            final FormEntity filtered = filterListedForm(form, request, response);
+                            if (filtered != null) {
+                                generator.writeObject(RestV1Form.fromEntity(filtered));
+                            }
+                        }
+                    }
+                } else {
+                    try (Stream<FormSummary> summaries = formRepository.streamCurrentSummariesAfter(after)) {
+                        final Iterator<FormSummary> iterator = limit != 0
+                                ? summaries.limit(limit).iterator()
+                                : summaries.iterator();
+                        while (iterator.hasNext()) {
+                            generator.writeObject(RestV1FormSummary.fromSummary(iterator.next()));
+                        }
+                    }
+                }
+                generator.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write the list of forms", e);
+            }
+            return null;
+        });
+
+        return null; // The response is complete
     }
 
     /**
-     * Obtains the {@link RestV1Form} with the specified <code>fname</code>.
+     * Obtains the {@link RestV1Form} with the specified <code>fname</code>.  Supports conditional
+     * requests:  a request with an <code>If-None-Match</code> header that matches the
+     * <code>ETag</code> of the response receives a <code>304 Not Modified</code> response.  When no
+     * filter applies, the response is the same for everyone;  it carries a strong ETag based on the
+     * fname and version of the form (and the content coding), so that the check requires the
+     * version number alone.  Otherwise it carries a weak ETag that includes a digest of the filtered
+     * form, so that users who receive different variants never share a validator.
      */
     @RequestMapping(value = "/{fname}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity getFormByFname(@PathVariable("fname") String fname,
@@ -101,31 +259,110 @@ public class FormsRestController {
                     .body("The specified fname is invalid:  " + fname);
         }
 
+        final String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        final boolean gzip = sendsGzip(request);
+
         /*
          * Special Case:  endStateFormEntity
          *
          * This form is a memory-only (non-database) construct for completing a complex workflow.
          */
         if (endStateFormEntity.getId().getFname().equals(fname)) {
+            final String etag = etag(fname, endStateFormEntity.getId().getVersion(), gzip);
+            if (etagMatches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+            if (serializedEndStateForm != null) {
+                return serializedFormResponse(serializedEndStateForm, etag, gzip);
+            }
             return ResponseEntity
                     .status(HttpStatus.OK)
+                    .eTag(etag)
+                    .cacheControl(CACHE_CONTROL)
                     .body(RestV1Form.fromEntity(endStateFormEntity));
         }
 
+        /*
+         * Dynamic checks are evaluated once;  the same selection builds the chain below.
+         */
+        final ExtensionFilterChainBuilder.ApplicableFilters applicable = filterChainBuilder.getApplicableFilters(
+                new ExtensionFilterChainMetadata(fname, FormEntity.class), null, request);
+
+        if (applicable.isEmpty()) {
+
+            /*
+             * Conditional GET:  if the client already holds the current version of the form, we
+             * can answer based on the version number alone, without loading (or serializing) the
+             * form.
+             */
+            if (ifNoneMatch != null) {
+                final Integer currentVersion = latestFormCache.getLatestVersion(fname);
+                if (currentVersion != null) {
+                    final String etag = etag(fname, currentVersion, gzip);
+                    if (etagMatches(ifNoneMatch, etag)) {
+                        logger.debug("Responding 304 Not Modified for fname='{}' and ETag {}", fname, etag);
+                        return notModified(etag);
+                    }
+                }
+            }
+
+            /*
+             * The response is the same for everyone;  write the pre-serialized bytes of the cached
+             * form.
+             */
+            if (serializedFormCache.isEnabled()) {
+                final FormEntity latest = latestFormCache.getLatest(fname);
+                if (latest == null) {
+                    return ResponseEntity
+                            .status(HttpStatus.NOT_FOUND)
+                            .body("A form with the specified fname does not exist:  " + fname);
+                }
+                return serializedFormResponse(serializedFormCache.get(latest),
+                        etag(fname, latest.getId().getVersion(), gzip), gzip);
+            }
+
+        }
+
+        /*
+         * Forms come from the LatestFormCache, which shares them between requests;  filters receive
+         * a copy they are free to modify.  Since the response may differ per request, it is
+         * serialized normally.
+         */
         final FormEntity entity =
-                filterChainBuilder.fromSupplier(new ExtensionFilterChainMetadata(fname, FormEntity.class),
-                        request, response, () -> formRepository.findFirstByIdFnameOrderByIdVersionDesc(fname)).get();
+                filterChainBuilder.fromSupplier(applicable, request, response, () -> {
+                            final FormEntity latest = latestFormCache.getLatest(fname);
+                            return latest != null ? latest.deepCopy() : null;
+                        }).get();
 
-        if (entity != null) {
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(RestV1Form.fromEntity(entity));
-        } else {
+        if (entity == null) {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
                     .body("A form with the specified fname does not exist:  " + fname);
         }
 
+        final String etag = applicable.isEmpty()
+                ? etag(entity.getId().getFname(), entity.getId().getVersion(), false)
+                : variantEtag(entity);
+        final HttpHeaders headers = new HttpHeaders();
+        if (!applicable.isEmpty()) {
+            headers.setVary(Collections.singletonList(HttpHeaders.AUTHORIZATION)); // The variant depends on the user
+        }
+        if (etagMatches(ifNoneMatch, etag)) {
+            logger.debug("Responding 304 Not Modified for fname='{}' and ETag {}", fname, etag);
+            return ResponseEntity
+                    .status(HttpStatus.NOT_MODIFIED)
+                    .headers(headers)
+                    .eTag(etag)
+                    .cacheControl(CACHE_CONTROL)
+                    .build();
+        }
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .headers(headers)
+                .eTag(etag)
+                .cacheControl(CACHE_CONTROL)
+                .body(RestV1Form.fromEntity(entity));
+
     }
 
     /*
@@ -145,7 +382,7 @@ public class FormsRestController {
         logger.debug("Received the following RestV1Form at {} {}:  {}",
                 API_ROOT, RequestMethod.POST, form);
 
-        if (formRepository.existsByIdFname(form.getFname())) {
+        if (formVersionRegistry.getCurrentVersion(form.getFname()) != null) {
             /*
              * We already have a Form with this fname;  we cannot accept this new one.
              */
@@ -166,13 +403,19 @@ public class FormsRestController {
          */
         form.setVersion(1);
 
-        final FormEntity entity = filterChainBuilder.fromUnaryOperator(
-                new ExtensionFilterChainMetadata(form.getFname(), FormEntity.class),
-                RestV1Form.toEntity(form),
-                request,
-                response,
-                (e) -> formRepository.save(e)
-        ).get();
+        try {
+            filterChainBuilder.fromUnaryOperator(
+                    new ExtensionFilterChainMetadata(form.getFname(), FormEntity.class),
+                    RestV1Form.toEntity(form),
+                    request,
+                    response,
+                    (e) -> latestFormCache.update(formRepository.save(e))
+            ).get();
+        } catch (FormVersionConflictException fvce) {
+            return versionConflict(form.getFname(), fvce);
+        } catch (ExtensionFilterUnavailableException efue) {
+            return filterUnavailable(form.getFname(), efue);
+        }
 
         return ResponseEntity
                 .status(HttpStatus.CREATED)
@@ -193,7 +436,9 @@ public class FormsRestController {
         logger.debug("Received the following RestV1Form at {}/{} {}:\n{}",
                 API_ROOT, form.getFname(), RequestMethod.PUT, form);
 
-        if (!formRepository.existsByIdFname(form.getFname())) {
+        final Integer previousVersion =
+                formVersionRegistry.confirmCurrentVersion(form.getFname(), form.getVersion() - 1);
+        if (previousVersion == null) {
             /*
              * The specified form must already exist
              */
@@ -211,8 +456,7 @@ public class FormsRestController {
                             + fname + "')"));
         }
 
-        final FormEntity previousVersion = formRepository.findFirstByIdFnameOrderByIdVersionDesc(fname);
-        final int expectedVersionNumber = previousVersion.getId().getVersion() + 1;
+        final int expectedVersionNumber = previousVersion + 1;
         if (!Objects.equals(form.getVersion(), expectedVersionNumber)) {
             /*
              * The specified form must correctly specify the next version number (prevents havoc
@@ -227,13 +471,19 @@ public class FormsRestController {
         /*
          * Save the RestV1Form as a new FormEntity
          */
-        final FormEntity entity = filterChainBuilder.fromUnaryOperator(
-                new ExtensionFilterChainMetadata(fname, FormEntity.class),
-                RestV1Form.toEntity(form),
-                request,
-                response,
-                (e) -> formRepository.save(e)
-        ).get();
+        try {
+            filterChainBuilder.fromUnaryOperator(
+                    new ExtensionFilterChainMetadata(fname, FormEntity.class),
+                    RestV1Form.toEntity(form),
+                    request,
+                    response,
+                    (e) -> latestFormCache.update(formRepository.save(e))
+            ).get();
+        } catch (FormVersionConflictException fvce) {
+            return versionConflict(form.getFname(), fvce);
+        } catch (ExtensionFilterUnavailableException efue) {
+            return filterUnavailable(form.getFname(), efue);
+        }
 
         return ResponseEntity
                 .status(HttpStatus.OK)
@@ -245,4 +495,155 @@ public class FormsRestController {
      * Support delete?  What happens to existing submissions?
      */
 
+    /*
+     * Implementation
+     */
+
+    /**
+     * Another request (possibly on another node) saved the same form first.
+     */
+    private ResponseEntity<UpdateStatus> versionConflict(String fname, FormVersionConflictException e) {
+        logger.info("Rejected a concurrent change to form '{}':  {}", fname, e.getMessage());
+        final Integer currentVersion = formVersionRegistry.refresh(fname);
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(UpdateStatus.failure("The form was changed by another request;  the current version is "
+                        + currentVersion));
+    }
+
+    /**
+     * A fail-closed extension filter is unavailable (its circuit is open);  the client should try
+     * again later.
+     */
+    private ResponseEntity<UpdateStatus> filterUnavailable(String fname, ExtensionFilterUnavailableException e) {
+        logger.warn("Unable to save form '{}':  {}", fname, e.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .body(UpdateStatus.failure(e.getMessage()));
+    }
+
+    /**
+     * Passes a form in a listing through the extension filters that apply to it.  Returns
+     * <code>null</code> if a filter withholds the form (by returning <code>null</code> or aborting
+     * the chain).
+     */
+    private FormEntity filterListedForm(FormEntity form, HttpServletRequest request, HttpServletResponse response) {
+        final ExtensionFilterChainBuilder.ApplicableFilters applicable = filterChainBuilder.getApplicableFilters(
+                new ExtensionFilterChainMetadata(form.getId().getFname(), FormEntity.class), null, request);
+        if (applicable.isEmpty()) {
+            return form;
+        }
+        try {
+            return filterChainBuilder.fromSupplier(applicable, request, response, () -> form).get();
+        } catch (ExtensionFilterChainAbortException e) {
+            logger.debug("Omitting form '{}' from the listing:  {}", form.getId().getFname(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Forms are identified by fname and version;  a given version of a form never changes, so this
+     * value is suitable for a strong ETag of the unfiltered form.  Each content coding of the same
+     * form is a different representation, so the gzip-compressed bytes have an ETag of their own.
+     */
+    private static String etag(String fname, int version, boolean gzip) {
+        return "\"" + fname + "-v" + version + (gzip ? "-gzip" : "") + "\"";
+    }
+
+    /**
+     * A weak ETag for a form that filters may have adjusted for the user, based on a digest of its
+     * (filtered) content.
+     */
+    private static String variantEtag(FormEntity form) {
+        final String content = digest(form.getStoredSchema()) + "/" + digest(form.getStoredMetadata());
+        return "W/\"" + form.getId().getFname() + "-v" + form.getId().getVersion() + "-"
+                + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private static String digest(StoredJson storedJson) {
+        return storedJson != null ? storedJson.digest() : "-";
+    }
+
+    /**
+     * Evaluates the (possibly <code>null</code>) value of an <code>If-None-Match</code> header
+     * against the specified ETag, using the weak comparison that RFC 7232 requires for this header.
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String opaqueTag = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaqueTag(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Indicates whether a form that no filter adjusts is sent to this client compressed.
+     */
+    private boolean sendsGzip(HttpServletRequest request) {
+        return serializedFormCache.isGzip()
+                && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Writes the bytes of a serialized form directly, using the compressed representation if
+     * available and acceptable to the client.
+     */
+    private static ResponseEntity<byte[]> serializedFormResponse(SerializedFormCache.SerializedForm serializedForm,
+            String etag, boolean gzip) {
+        final ResponseEntity.BodyBuilder builder = ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(etag)
+                .cacheControl(CACHE_CONTROL);
+        if (serializedForm.getGzip() == null) {
+            return builder.body(serializedForm.getJson());
+        }
+        builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return builder
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(serializedForm.getGzip());
+        }
+        return builder.body(serializedForm.getJson());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] tokens = coding.split(";");
+            if (tokens[0].trim().equalsIgnoreCase("gzip")) {
+                // Honor an explicit refusal, i.e. 'gzip;q=0'
+                return tokens.length < 2 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Responds to a conditional request for a form that no filter adjusts.
+     */
+    private ResponseEntity notModified(String etag) {
+        final ResponseEntity.HeadersBuilder<?> builder = ResponseEntity
+                .status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CACHE_CONTROL);
+        if (serializedFormCache.isGzip()) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        return builder.build();
+    }
+
 }
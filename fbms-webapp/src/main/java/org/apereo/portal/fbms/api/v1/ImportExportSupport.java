@@ -20,6 +20,8 @@ package org.apereo.portal.fbms.api.v1;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
+import org.apereo.portal.fbms.data.LatestFormCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -65,6 +67,12 @@ public class ImportExportSupport implements CommandLineRunner {
     @Autowired
     private FormRepository formRepository;
 
+    @Autowired
+    private FormVersionRegistry formVersionRegistry;
+
+    @Autowired
+    private LatestFormCache latestFormCache;
+
     private ObjectMapper mapper = new ObjectMapper();
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -131,12 +139,12 @@ public class ImportExportSupport implements CommandLineRunner {
     private void importJsonFile(Path location) throws IOException {
         try (InputStream inpt = Files.newInputStream(location)) {
             final RestV1Form form = mapper.readValue(inpt, RestV1Form.class);
-            if (formRepository.existsByIdFname(form.getFname())) {
+            if (formVersionRegistry.getCurrentVersion(form.getFname()) != null) {
                 logger.warn("Unable to import the Form at location {};  a Form with fname='{}' already exists",
                         location, form.getFname());
             } else {
                 form.setVersion(1);  // New Form must be version 1
-                formRepository.save(RestV1Form.toEntity(form));
+                latestFormCache.update(formRepository.save(RestV1Form.toEntity(form)));
             }
         } catch (Exception e) {
             logger.warn("Unable to import the Form at location {}", location, e);
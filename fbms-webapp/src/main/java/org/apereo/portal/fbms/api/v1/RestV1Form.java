@@ -21,6 +21,7 @@ package org.apereo.portal.fbms.api.v1;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.apereo.portal.fbms.data.FormEntity;
 import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.StoredJson;
 
 import java.util.Objects;
 
@@ -40,8 +41,8 @@ public final class RestV1Form {
         return new RestV1Form()
                 .setFname(entity.getId().getFname())
                 .setVersion(entity.getId().getVersion())
-                .setSchema(entity.getSchema())
-                .setMetadata(entity.getMetadata());
+                .setSchema(toJsonNode(entity.getStoredSchema()))
+                .setMetadata(toJsonNode(entity.getStoredMetadata()));
     }
 
     public static FormEntity toEntity(RestV1Form form) {
@@ -130,4 +131,16 @@ public final class RestV1Form {
         return Objects.hash(fname, version);
     }
 
+    /*
+     * Implementation
+     */
+
+    /**
+     * JSON that no filter has touched is copied from its stored form into the response, without
+     * building a tree.
+     */
+    private static JsonNode toJsonNode(StoredJson json) {
+        return json != null ? json.toJsonNode() : null;
+    }
+
 }
@@ -0,0 +1,103 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import org.apereo.portal.fbms.data.FormSummary;
+
+import java.util.Objects;
+
+/**
+ * Represents a summary of a Form (without its schema) for the purpose of JSON serialization via
+ * Jackson within the v1 REST API.  For the sake of backwards compatibility, the members of this
+ * type should never change in their number or nature once the v1 API of FMBS has a full release.
+ */
+public final class RestV1FormSummary {
+
+    private String fname;
+    private int version;
+    private String title;
+
+    public static RestV1FormSummary fromSummary(FormSummary summary) {
+        return new RestV1FormSummary()
+                .setFname(summary.getFname())
+                .setVersion(summary.getVersion())
+                .setTitle(summary.getTitle());
+    }
+
+    /**
+     * Uniquely identifies the {@link RestV1Form}.
+     */
+    public String getFname() {
+        return fname;
+    }
+
+    public RestV1FormSummary setFname(String fname) {
+        this.fname = fname;
+        return this;
+    }
+
+    /**
+     * The current (most recent) version of the {@link RestV1Form}.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public RestV1FormSummary setVersion(int version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * The <code>title</code> from the metadata of the {@link RestV1Form}, or <code>null</code> if
+     * it doesn't have one.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    public RestV1FormSummary setTitle(String title) {
+        this.title = title;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "RestV1FormSummary{" +
+                "fname='" + fname + '\'' +
+                ", version=" + version +
+                ", title='" + title + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RestV1FormSummary that = (RestV1FormSummary) o;
+        return version == that.version &&
+                Objects.equals(fname, that.fname);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fname, version);
+    }
+
+}
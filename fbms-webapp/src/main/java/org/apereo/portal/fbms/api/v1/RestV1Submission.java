@@ -44,7 +44,9 @@ public final class RestV1Submission {
                 .setFormFname(entity.getId().getFname())
                 .setFormVersion(entity.getId().getVersion())
                 .setTimestamp(entity.getId().getTimestamp().getTime())
-                .setAnswers(entity.getAnswers());
+                .setAnswers(entity.getStoredAnswers() != null
+                        ? entity.getStoredAnswers().toJsonNode() // Copied to the response without building a tree
+                        : null);
     }
 
     public static SubmissionEntity toEntity(RestV1Submission submission) {
@@ -0,0 +1,170 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holds the serialized (UTF-8 JSON and, optionally, gzip-compressed) representation of
+ * {@link RestV1Form} objects, so that unmodified forms can be written to the response without
+ * walking the schema with Jackson on every request.  Entries are keyed by {@link FormIdentifier};
+ * since a given version of a form never changes, they never go stale.
+ *
+ * <p>Use this bean only for shared, unmodified forms (e.g. from the
+ * {@link org.apereo.portal.fbms.data.LatestFormCache}).  A form that has been adjusted for the
+ * current request (e.g. by an extension filter) must be serialized normally.
+ */
+@Component
+public class SerializedFormCache {
+
+    private static final String CACHE_NAME = "serializedForms";
+
+    @Value("${org.apereo.portal.fbms.cache.serializedForms.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Upper bound on the size (in bytes) of all cached representations.
+     */
+    @Value("${org.apereo.portal.fbms.cache.serializedForms.maximumWeight:50000000}")
+    private long maximumWeight;
+
+    @Value("${org.apereo.portal.fbms.cache.serializedForms.gzip:true}")
+    private boolean gzip;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Configured the same way as the ObjectMapper in Spring MVC's message converter, so that the
+     * output is the same either way.
+     */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private BoundedCache<FormIdentifier,SerializedForm> cache;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        cache = new BoundedCache<>(CACHE_NAME, maximumWeight, 0L, SerializedForm::getWeight);
+        if (meterRegistry != null) {
+            cache.bindTo(meterRegistry);
+        }
+        logger.info("Initialized the serialized form cache (enabled={}, gzip={}):  {}", enabled, gzip, cache);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Indicates whether serialized forms include a gzip-compressed representation.
+     */
+    public boolean isGzip() {
+        return enabled && gzip;
+    }
+
+    /**
+     * Obtains the serialized representation of the specified form, encoding it if necessary.  The
+     * form must not have been modified since it was loaded.
+     */
+    public SerializedForm get(FormEntity form) {
+        return cache.get(form.getId(), id -> encode(form));
+    }
+
+    /**
+     * Encodes the specified form without caching the result;  suitable for forms that never come
+     * from the database (e.g. the <code>endStateFormEntity</code>), which callers may keep for
+     * themselves.
+     */
+    public SerializedForm encode(FormEntity form) {
+        try {
+            final byte[] json = objectMapper.writeValueAsBytes(RestV1Form.fromEntity(form));
+            return new SerializedForm(json, gzip ? compress(json) : null);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to serialize the specified form:  " + form.getId(), e);
+        }
+    }
+
+    /*
+     * Implementation
+     */
+
+    private static byte[] compress(byte[] json) throws IOException {
+        final ByteArrayOutputStream rslt = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(rslt)) {
+            gzipOutputStream.write(json);
+        }
+        return rslt.toByteArray();
+    }
+
+    /*
+     * Nested Types
+     */
+
+    /**
+     * The encoded representation of one version of a form.
+     */
+    public static final class SerializedForm {
+
+        private final byte[] json;
+        private final byte[] gzip;
+
+        /* package-private */ SerializedForm(byte[] json, byte[] gzip) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        /**
+         * UTF-8 JSON.  Do not modify.
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * Gzip-compressed UTF-8 JSON, or <code>null</code> if compression is not enabled.  Do not
+         * modify.
+         */
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        /* package-private */ long getWeight() {
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apereo.portal.fbms.util.BoundedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Makes submission POSTs idempotent for clients that send an <code>Idempotency-Key</code> header.
+ * The outcome of the first request with a given key (per user and form) is remembered for a time,
+ * and requests that repeat the key receive the same outcome without being processed again.  A
+ * repeat that arrives while the first request is still being processed waits for it.
+ *
+ * <p>The outcome includes the headers that the operation set directly on the
+ * <code>HttpServletResponse</code> (e.g. by extension filters), as well as those of the
+ * <code>ResponseEntity</code>.  Outcomes that invite the client to try again (5xx responses,
+ * exceptions) are not remembered.  Completed outcomes are held in a bounded cache;  requests in
+ * progress are tracked separately, so that they are never evicted while a repeat may arrive.
+ * Everything is held in memory, so a repeat that reaches another node of a cluster is processed
+ * normally (and is subject to the usual timestamp check).
+ */
+@Component
+public class SubmissionIdempotencySupport {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * Added to responses that were answered from a remembered outcome.
+     */
+    public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String CACHE_NAME = "idempotentSubmissions";
+
+    private static final int MAXIMUM_KEY_LENGTH = 255;
+
+    @Value("${org.apereo.portal.fbms.submissions.idempotency.maximumSize:10000}")
+    private long maximumSize;
+
+    @Value("${org.apereo.portal.fbms.submissions.idempotency.timeToLiveSeconds:86400}")
+    private long timeToLiveSeconds;
+
+    /**
+     * How long a repeat waits for the first request with the same key to complete.
+     */
+    @Value("${org.apereo.portal.fbms.submissions.idempotency.waitTimeoutSeconds:30}")
+    private long waitTimeoutSeconds;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Completed attempts whose outcomes are remembered.
+     */
+    private BoundedCache<Key,Attempt> attempts;
+
+    /**
+     * Attempts in progress;  never evicted.
+     */
+    private final ConcurrentMap<Key,Attempt> inProgress = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        attempts = new BoundedCache<>(CACHE_NAME, maximumSize, TimeUnit.SECONDS.toMillis(timeToLiveSeconds));
+        if (meterRegistry != null) {
+            attempts.bindTo(meterRegistry);
+        }
+    }
+
+    /**
+     * Invokes the operation, unless a request with the same key has already been processed (or is
+     * being processed).
+     *
+     * @param idempotencyKey The value of the header, or <code>null</code> if there wasn't one
+     * @param submissionTimestamp Distinguishes a repeat from a different submission that (wrongly)
+     * reuses the key
+     * @param response The response to which the operation may add headers directly
+     */
+    public ResponseEntity<UpdateStatus> execute(String username, String fname, String idempotencyKey,
+            Long submissionTimestamp, HttpServletResponse response,
+            Supplier<ResponseEntity<UpdateStatus>> operation) {
+
+        if (idempotencyKey == null) {
+            return operation.get();
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAXIMUM_KEY_LENGTH) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(UpdateStatus.failure("The " + IDEMPOTENCY_KEY_HEADER + " header must contain 1 to "
+                            + MAXIMUM_KEY_LENGTH + " characters"));
+        }
+
+        final Key key = new Key(username, fname, idempotencyKey);
+        while (true) {
+
+            Attempt existing = attempts.get(key);
+            if (existing == null) {
+                final Attempt attempt = new Attempt(submissionTimestamp);
+                existing = inProgress.putIfAbsent(key, attempt);
+                if (existing == null) {
+                    if (attempts.get(key) != null) {
+                        // Completed after we looked
+                        inProgress.remove(key, attempt);
+                        continue;
+                    }
+                    // This request is the first
+                    return executeFirst(key, attempt, response, operation);
+                }
+            }
+
+            if (!Objects.equals(existing.submissionTimestamp, submissionTimestamp)) {
+                return ResponseEntity
+                        .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                        .body(UpdateStatus.failure("The specified " + IDEMPOTENCY_KEY_HEADER
+                                + " was used for a different submission"));
+            }
+
+            final ResponseEntity<UpdateStatus> outcome;
+            try {
+                outcome = existing.outcome.get(waitTimeoutSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                return ResponseEntity
+                        .status(HttpStatus.CONFLICT)
+                        .body(UpdateStatus.failure("A request with the specified " + IDEMPOTENCY_KEY_HEADER
+                                + " is still being processed"));
+            } catch (ExecutionException e) {
+                continue; // The first request failed (and was forgotten);  try again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a request with the same "
+                        + IDEMPOTENCY_KEY_HEADER, e);
+            }
+            if (outcome.getStatusCode().is5xxServerError()) {
+                continue; // Not remembered;  try again
+            }
+
+            logger.debug("Replaying the outcome of the request with {} '{}' of user '{}' for form '{}'",
+                    IDEMPOTENCY_KEY_HEADER, idempotencyKey, username, fname);
+            return ResponseEntity
+                    .status(outcome.getStatusCode())
+                    .headers(outcome.getHeaders())
+                    .header(IDEMPOTENT_REPLAYED_HEADER, Boolean.TRUE.toString())
+                    .body(outcome.getBody());
+
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private ResponseEntity<UpdateStatus> executeFirst(Key key, Attempt attempt, HttpServletResponse response,
+            Supplier<ResponseEntity<UpdateStatus>> operation) {
+        try {
+            final Map<String,List<String>> headersBefore = headersOf(response);
+            final ResponseEntity<UpdateStatus> rslt = operation.get();
+            final ResponseEntity<UpdateStatus> outcome = ResponseEntity
+                    .status(rslt.getStatusCode())
+                    .headers(headersAddedTo(response, headersBefore))
+                    .headers(rslt.getHeaders())
+                    .body(rslt.getBody());
+            if (!rslt.getStatusCode().is5xxServerError()) {
+                attempts.put(key, attempt); // Before it leaves inProgress
+            }
+            attempt.outcome.complete(outcome);
+            return rslt;
+        } catch (RuntimeException e) {
+            attempt.outcome.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(key, attempt);
+        }
+    }
+
+    private static Map<String,List<String>> headersOf(HttpServletResponse response) {
+        final Map<String,List<String>> rslt = new HashMap<>();
+        if (response != null) {
+            for (String name : response.getHeaderNames()) {
+                rslt.put(name, new ArrayList<>(response.getHeaders(name)));
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * The header values present in the response that were not present before.
+     */
+    private static HttpHeaders headersAddedTo(HttpServletResponse response, Map<String,List<String>> before) {
+        final HttpHeaders rslt = new HttpHeaders();
+        headersOf(response).forEach((name, values) -> {
+            final List<String> added = new ArrayList<>(values);
+            added.removeAll(before.getOrDefault(name, new ArrayList<>()));
+            if (!added.isEmpty()) {
+                rslt.put(name, added);
+            }
+        });
+        return rslt;
+    }
+
+    /*
+     * Nested Types
+     */
+
+    private static final class Key {
+
+        private final String username;
+        private final String fname;
+        private final String idempotencyKey;
+
+        private Key(String username, String fname, String idempotencyKey) {
+            this.username = username;
+            this.fname = fname;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(username, key.username) &&
+                    Objects.equals(fname, key.fname) &&
+                    Objects.equals(idempotencyKey, key.idempotencyKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, fname, idempotencyKey);
+        }
+
+    }
+
+    private static final class Attempt {
+
+        private final Long submissionTimestamp;
+        private final CompletableFuture<ResponseEntity<UpdateStatus>> outcome = new CompletableFuture<>();
+
+        private Attempt(Long submissionTimestamp) {
+            this.submissionTimestamp = submissionTimestamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
+import org.apereo.portal.fbms.data.LatestSubmissionCache;
+import org.apereo.portal.fbms.data.SubmissionBatchInserter;
+import org.apereo.portal.fbms.data.SubmissionEntity;
+import org.apereo.portal.fbms.util.FnameValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements bulk import of {@link RestV1Submission} objects from newline-delimited JSON (NDJSON),
+ * e.g. for migrating survey data from other systems.  Each line is validated against the current
+ * version of the form it references, then written with JDBC batch inserts (bypassing the extension
+ * filter chain).  One result per non-blank input line is written to the output, in input order, as
+ * each batch completes.  Memory use is bounded by the batch size, regardless of the size of the
+ * input.
+ */
+@Component
+public class SubmissionImportSupport {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    @Value("${org.apereo.portal.fbms.submissions.import.batchSize:500}")
+    private int batchSize;
+
+    @Autowired
+    private FormVersionRegistry formVersionRegistry;
+
+    @Autowired
+    private SubmissionBatchInserter batchInserter;
+
+    @Autowired
+    private LatestSubmissionCache latestSubmissionCache;
+
+    @Autowired
+    private FnameValidator fnameValidator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Reads submissions (one per line) from the input and writes results (one per line) to the
+     * output.  Each result contains the line number and <code>success</code>;  failures also
+     * contain a <code>message</code>.  Neither stream is closed.
+     */
+    public void importSubmissions(InputStream input, OutputStream output) throws IOException {
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+
+        final List<LineResult> pending = new ArrayList<>(batchSize);
+        int lineNumber = 0;
+        int submitted = 0;
+        int written = 0;
+
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            ++lineNumber;
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            ++submitted;
+            pending.add(parse(lineNumber, line));
+            if (pending.size() >= batchSize) {
+                written += flush(pending, generator);
+            }
+        }
+        written += flush(pending, generator);
+        generator.writeRaw('\n');
+        generator.close();
+
+        logger.info("Imported {} of {} submission(s) from NDJSON", written, submitted);
+
+    }
+
+    /*
+     * Nested Types
+     */
+
+    private static final class LineResult {
+
+        private final int lineNumber;
+        private final SubmissionEntity submission;
+        private String failure;
+
+        private LineResult(int lineNumber, SubmissionEntity submission, String failure) {
+            this.lineNumber = lineNumber;
+            this.submission = submission;
+            this.failure = failure;
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private LineResult parse(int lineNumber, String line) {
+
+        final RestV1Submission submission;
+        try {
+            submission = objectMapper.readValue(line, RestV1Submission.class);
+        } catch (IOException e) {
+            return new LineResult(lineNumber, null, "Unable to read the submission:  " + e.getOriginalMessage());
+        }
+
+        final String failure = validate(submission);
+        return failure == null
+                ? new LineResult(lineNumber, RestV1Submission.toEntity(submission), null)
+                : new LineResult(lineNumber, null, failure);
+
+    }
+
+    /**
+     * Returns a message describing the problem with the submission, or <code>null</code> if it's
+     * valid.  Submissions may reference any version of the form up to the current one.
+     */
+    private String validate(RestV1Submission submission) {
+        if (StringUtils.isBlank(submission.getUsername())) {
+            return "Submission username not set";
+        } else if (!fnameValidator.isValid(submission.getFormFname())) {
+            return "The specified fname is invalid:  " + submission.getFormFname();
+        } else if (submission.getTimestamp() == null) {
+            return "Submission timestamp not set";
+        }
+        final Integer currentVersion = formVersionRegistry.getCurrentVersion(submission.getFormFname());
+        if (currentVersion == null) {
+            return "The specified form does not exist:  " + submission.getFormFname();
+        } else if (submission.getFormVersion() < 1 || submission.getFormVersion() > currentVersion) {
+            return "Invalid Form version;  expected 1 to " + currentVersion + ", was "
+                    + submission.getFormVersion();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the valid submissions, then the results for all pending lines.
+     *
+     * @return The number of submissions written
+     */
+    private int flush(List<LineResult> pending, JsonGenerator generator) throws IOException {
+
+        final List<LineResult> valid = new ArrayList<>(pending.size());
+        final List<SubmissionEntity> submissions = new ArrayList<>(pending.size());
+        for (LineResult result : pending) {
+            if (result.submission != null) {
+                valid.add(result);
+                submissions.add(result.submission);
+            }
+        }
+
+        int rslt = 0;
+        final List<RuntimeException> failures = batchInserter.insert(submissions);
+        for (int i = 0; i < valid.size(); i++) {
+            final LineResult result = valid.get(i);
+            final RuntimeException failure = failures.get(i);
+            if (failure == null) {
+                ++rslt;
+                latestSubmissionCache.evict(result.submission.getId().getUsername(),
+                        result.submission.getId().getFname());
+            } else {
+                logger.debug("Failed to import the submission on line {}", result.lineNumber, failure);
+                result.failure = "Unable to write the submission:  " + failure.getMessage();
+            }
+        }
+
+        for (LineResult result : pending) {
+            generator.writeStartObject();
+            generator.writeNumberField("line", result.lineNumber);
+            generator.writeBooleanField("success", result.failure == null);
+            if (result.failure != null) {
+                generator.writeStringField("message", result.failure);
+            }
+            generator.writeEndObject();
+        }
+        generator.flush();
+
+        pending.clear();
+        return rslt;
+
+    }
+
+}
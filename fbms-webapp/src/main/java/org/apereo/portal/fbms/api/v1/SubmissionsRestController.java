@@ -19,12 +19,16 @@
 package org.apereo.portal.fbms.api.v1;
 
 import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
+import org.apereo.portal.fbms.data.ExtensionFilterUnavailableException;
 import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
-import org.apereo.portal.fbms.data.FormEntity;
-import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
+import org.apereo.portal.fbms.data.LatestSubmissionCache;
 import org.apereo.portal.fbms.data.SubmissionEntity;
+import org.apereo.portal.fbms.data.SubmissionPreconditions;
+import org.apereo.portal.fbms.data.SubmissionQueueFullException;
 import org.apereo.portal.fbms.data.SubmissionRepository;
+import org.apereo.portal.fbms.data.SubmissionWriter;
 import org.apereo.portal.fbms.data.filter.FormForwardingExtensionFilter;
 import org.apereo.portal.fbms.util.FnameValidator;
 import org.apereo.portal.fbms.util.MessageServices;
@@ -32,6 +36,8 @@ import org.apereo.portal.fbms.util.UserServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -44,6 +50,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.Objects;
 
 /**
@@ -52,19 +61,43 @@ import java.util.Objects;
 @Controller
 @CrossOrigin(
         origins = "${org.apereo.portal.fbms.api.cors.origins:http://localhost:8080}",
-        exposedHeaders = FormForwardingExtensionFilter.FORM_FORWARD_HEADER_NAME
+        exposedHeaders = {
+                FormForwardingExtensionFilter.FORM_FORWARD_HEADER_NAME,
+                SubmissionIdempotencySupport.IDEMPOTENT_REPLAYED_HEADER
+        }
 )
 @RequestMapping(SubmissionsRestController.API_ROOT)
 public class SubmissionsRestController {
 
     /* package-private */ static final String API_ROOT = "/api/v1/submissions";
 
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    /**
+     * Also enforced by the {@link org.apereo.portal.fbms.SpringSecurityConfiguration};  the import
+     * API writes submissions on behalf of any user, so it checks again.
+     */
+    @Value("${org.apereo.portal.fbms.security.importAuthority:Portal Administrators}")
+    private String importAuthority;
+
     @Autowired
-    private FormRepository formRepository;
+    private FormVersionRegistry formVersionRegistry;
 
     @Autowired
     private SubmissionRepository submissionRepository;
 
+    @Autowired
+    private LatestSubmissionCache latestSubmissionCache;
+
+    @Autowired
+    private SubmissionWriter submissionWriter;
+
+    @Autowired
+    private SubmissionImportSupport submissionImportSupport;
+
+    @Autowired
+    private SubmissionIdempotencySupport submissionIdempotencySupport;
+
     @Autowired
     private ExtensionFilterChainBuilder filterChainBuilder;
 
@@ -97,7 +130,7 @@ public class SubmissionsRestController {
 
         final SubmissionEntity entity =
                 filterChainBuilder.fromSupplier(new ExtensionFilterChainMetadata(fname, SubmissionEntity.class),
-                        request, response, () -> submissionRepository.findFirstByIdUsernameAndIdFnameOrderByIdTimestampDesc(username, fname)
+                        request, response, () -> latestSubmission(username, fname)
                 ).get();
 
         if (entity != null) {
@@ -120,6 +153,10 @@ public class SubmissionsRestController {
      * specified fname.  NOTE:  there is no update (HTTP PUT) enpoint available for submissions;  each
      * interaction creates a new {@link RestV1Submission} object.  It's up to clients whether they want
      * to deal with multiple submissions by the same user, or only the most recent.
+     *
+     * <p>Clients that may retry (e.g. over unreliable networks) should send an
+     * <code>Idempotency-Key</code> header;  a retry with the same key receives the response to the
+     * original request instead of being processed again.
      */
     @RequestMapping(value = "/{fname}", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<UpdateStatus> respond(@PathVariable("fname") String fname,
@@ -131,6 +168,77 @@ public class SubmissionsRestController {
 
         final String username = userServices.getUsername(request);
 
+        return submissionIdempotencySupport.execute(username, fname,
+                request.getHeader(SubmissionIdempotencySupport.IDEMPOTENCY_KEY_HEADER), submission.getTimestamp(),
+                response, () -> submit(username, fname, submission, request, response));
+
+    }
+
+    /**
+     * Imports many {@link RestV1Submission} objects (for any users and forms) from a request body
+     * of newline-delimited JSON.  Responds with newline-delimited JSON as well:  one result per
+     * submission, streamed as the submissions are written.  Only privileged users have access to
+     * this API.
+     */
+    @RequestMapping(method = RequestMethod.POST, consumes = SubmissionImportSupport.NDJSON_MEDIA_TYPE)
+    public void importSubmissions(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        final String username = userServices.getUsername(request);
+        if (!userServices.getGroups(request).contains(importAuthority)) {
+            logger.warn("User '{}' is not permitted to import submissions", username);
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        logger.info("User '{}' is importing submissions at {} {}", username, API_ROOT, RequestMethod.POST);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(SubmissionImportSupport.NDJSON_MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        submissionImportSupport.importSubmissions(request.getInputStream(), response.getOutputStream());
+
+    }
+
+    /**
+     * Obtains the most recent {@link RestV1Submission} to the specified {@link RestV1Form} by the
+     * specified user.  Only privileged users have access to this API.
+     */
+    @RequestMapping(value = "/{fname}/users/{username}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity getSubmissionForUser(@PathVariable("fname") String fname,
+            @PathVariable("username") String username, HttpServletRequest request,
+            HttpServletResponse response) {
+
+        if (!fnameValidator.isValid(fname)) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body("The specified fname is invalid");
+        }
+
+        final SubmissionEntity entity =
+                filterChainBuilder.fromSupplier(new ExtensionFilterChainMetadata(fname, SubmissionEntity.class),
+                        request, response, () -> latestSubmission(username, fname)
+                ).get();
+
+        if (entity != null) {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(RestV1Submission.fromEntity(entity));
+        } else {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body("A submission from user '" + username + "' for form with fname '" +
+                            fname + "' does not exist");
+        }
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private ResponseEntity<UpdateStatus> submit(String username, String fname, RestV1Submission submission,
+            HttpServletRequest request, HttpServletResponse response) {
+
         if (!Objects.equals(username, submission.getUsername())) {
             /*
              * The username in the submission must match the Bearer token
@@ -140,22 +248,24 @@ public class SubmissionsRestController {
                     .body(UpdateStatus.failure("Incorrect username"));
         }
 
-        final FormEntity formEntity = formRepository.findFirstByIdFnameOrderByIdVersionDesc(fname);
-        if (formEntity == null) {
+        final SubmissionPreconditions preconditions =
+                findPreconditions(username, fname, submission.getFormVersion());
+        final Integer currentVersion = preconditions.getCurrentFormVersion();
+        if (currentVersion == null) {
             /*
              * There must be a Form with the specified fname
              */
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body(UpdateStatus.failure("The specified form does not exist:  " + fname));
-        } else if (!Objects.equals(submission.getFormVersion(), formEntity.getId().getVersion())) {
+        } else if (!Objects.equals(submission.getFormVersion(), currentVersion)) {
             /*
              * The submission must be for the most recent version of the form
              */
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body(UpdateStatus.failure("Incorrect Form version;  expected " +
-                            formEntity.getId().getVersion() + ", was " +
+                            currentVersion + ", was " +
                             submission.getFormVersion()));
         } else if (!Objects.equals(submission.getFormFname(), fname)) {
             /*
@@ -175,9 +285,8 @@ public class SubmissionsRestController {
                     .body(UpdateStatus.failure("Submission timestamp not set"));
         }
 
-        final SubmissionEntity mostRecent =
-                submissionRepository.findFirstByIdUsernameAndIdFnameOrderByIdTimestampDesc(username, fname);
-        if (mostRecent != null && submission.getTimestamp() < mostRecent.getId().getTimestamp().getTime()) {
+        final Date mostRecent = preconditions.getLatestSubmissionTimestamp();
+        if (mostRecent != null && submission.getTimestamp() < mostRecent.getTime()) {
             /*
              * The submission must be newer than the most recent one we already have
              */
@@ -186,21 +295,44 @@ public class SubmissionsRestController {
                     .body(UpdateStatus.failure("Submission timestamp is not sufficiently new"));
         }
 
-        // TODO:  validate JSON Schema
-
-        // Invoke the requested operation
+        /*
+         * Invoke the requested operation;  the answers are validated against the JSON Schema of
+         * the form by the JsonSchemaValidationExtensionFilter
+         */
         try {
             filterChainBuilder.fromUnaryOperator(
                     new ExtensionFilterChainMetadata(fname, SubmissionEntity.class),
                     RestV1Submission.toEntity(submission),
                     request,
                     response,
-                    (e) -> submissionRepository.save(e)
+                    (e) -> latestSubmissionCache.update(submissionWriter.isEnabled()
+                            ? submissionWriter.enqueue(e, request)
+                            : submissionRepository.save(e))
             ).get();
         } catch (ExtensionFilterChainAbortException fcae) {
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body(UpdateStatus.failure(messageServices.getMessages(request)));
+        } catch (SubmissionQueueFullException sqfe) {
+            /*
+             * Write-behind is enabled and the queue is full;  the client should try again
+             */
+            logger.warn("Unable to accept a submission from user '{}' for form '{}':  {}",
+                    username, fname, sqfe.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(UpdateStatus.failure(sqfe.getMessage()));
+        } catch (ExtensionFilterUnavailableException efue) {
+            /*
+             * A fail-closed extension filter is unavailable (its circuit is open)
+             */
+            logger.warn("Unable to accept a submission from user '{}' for form '{}':  {}",
+                    username, fname, efue.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(efue.getRetryAfterSeconds()))
+                    .body(UpdateStatus.failure(efue.getMessage()));
         }
 
         return ResponseEntity
@@ -210,36 +342,30 @@ public class SubmissionsRestController {
     }
 
     /**
-     * Obtains the most recent {@link RestV1Submission} to the specified {@link RestV1Form} by the
-     * specified user.  Only privileged users have access to this API.
+     * Uses in-memory state when the user's most recent submission is cached;  otherwise reads the
+     * current form version and the timestamp of the most recent submission in a single query.
      */
-    @RequestMapping(value = "/{fname}/users/{username}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity getSubmissionForUser(@PathVariable("fname") String fname,
-            @PathVariable("username") String username, HttpServletRequest request,
-            HttpServletResponse response) {
-
-        if (!fnameValidator.isValid(fname)) {
-            return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body("The specified fname is invalid");
+    private SubmissionPreconditions findPreconditions(String username, String fname, int formVersion) {
+        final SubmissionEntity cached = latestSubmissionCache.getIfPresent(username, fname);
+        if (cached != null) {
+            return new SubmissionPreconditions(formVersionRegistry.confirmCurrentVersion(fname, formVersion),
+                    cached.getId().getTimestamp());
         }
-
-        final SubmissionEntity entity =
-                filterChainBuilder.fromSupplier(new ExtensionFilterChainMetadata(fname, SubmissionEntity.class),
-                        request, response, () -> submissionRepository.findFirstByIdUsernameAndIdFnameOrderByIdTimestampDesc(username, fname)
-                ).get();
-
-        if (entity != null) {
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(RestV1Submission.fromEntity(entity));
-        } else {
-            return ResponseEntity
-                    .status(HttpStatus.NOT_FOUND)
-                    .body("A submission from user '" + username + "' for form with fname '" +
-                            fname + "' does not exist");
+        final SubmissionPreconditions rslt = submissionRepository.findPreconditions(username, fname);
+        if (rslt == null) {
+            // There is no such form
+            return new SubmissionPreconditions(null, null);
         }
+        formVersionRegistry.update(fname, rslt.getCurrentFormVersion());
+        return rslt;
+    }
 
+    /**
+     * Extension filters receive a copy of the cached submission, which they may modify.
+     */
+    private SubmissionEntity latestSubmission(String username, String fname) {
+        final SubmissionEntity rslt = latestSubmissionCache.getLatest(username, fname);
+        return rslt != null ? rslt.deepCopy() : null;
     }
 
 }
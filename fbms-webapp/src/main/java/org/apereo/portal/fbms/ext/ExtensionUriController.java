@@ -4,10 +4,13 @@ import org.apereo.portal.fbms.api.v1.UpdateStatus;
 import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
 import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
+import org.apereo.portal.fbms.data.ExtensionFilterUnavailableException;
 import org.apereo.portal.fbms.util.MessageServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,13 +18,24 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller that supports extension URIs.  Requests handled by this controller are (1) available
  * to unauthenticated requests and (2)decorated with an ExtensionFilterChain.
+ *
+ * <p>Requests are processed asynchronously:  the filter chain runs on the threads of the
+ * {@link ExtensionUriExecutor}, and the response is sent when the chain and any work the filters
+ * deferred (see {@link ExtensionUriEntity#defer(java.util.concurrent.CompletionStage)}) have
+ * completed.
  */
 @Controller
 @CrossOrigin(origins = "${org.apereo.portal.fbms.api.cors.origins:http://localhost:8080}")
@@ -30,36 +44,117 @@ public class ExtensionUriController {
 
     /* package-private */ static final String API_ROOT = "/ext";
 
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    @Value("${org.apereo.portal.fbms.ext.timeoutSeconds:30}")
+    private long timeoutSeconds;
+
     @Autowired
     private ExtensionFilterChainBuilder filterChainBuilder;
 
+    @Autowired
+    private ExtensionUriExecutor extensionUriExecutor;
+
     @Autowired
     private MessageServices messageServices;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @RequestMapping(value = "/{fname}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity invokeExtensionUri(@PathVariable("fname") String fname, HttpServletRequest request, HttpServletResponse response) {
+    public DeferredResult<ResponseEntity<UpdateStatus>> invokeExtensionUri(@PathVariable("fname") String fname,
+            HttpServletRequest request, HttpServletResponse response) {
+
+        final DeferredResult<ResponseEntity<UpdateStatus>> rslt =
+                new DeferredResult<>(TimeUnit.SECONDS.toMillis(timeoutSeconds));
 
+        final CompletableFuture<Void> future;
         try {
-            filterChainBuilder.fromSupplier(
-                    new ExtensionFilterChainMetadata(fname, ExtensionUriEntity.class),
-                    request,
-                    response,
-                    () -> {
-                        logger.debug("Invoking extension URI '{}'", request.getRequestURI());
-                        return null;
+            future = extensionUriExecutor.submit(fname, () -> invokeFilters(fname, rslt, request, response));
+        } catch (ExtensionUriRejectedException eure) {
+            logger.warn("Rejected a request for extension URI '{}':  {}", fname, eure.getMessage());
+            rslt.setResult(ResponseEntity
+                    .status(eure.getStatus())
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(UpdateStatus.failure(eure.getMessage())));
+            return rslt;
+        }
+
+        rslt.onTimeout(() -> {
+            logger.warn("A request for extension URI '{}' did not complete within {} seconds", fname, timeoutSeconds);
+            // Set the result first;  the task checks it before touching the request
+            rslt.setResult(ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(UpdateStatus.failure("The request did not complete in time")));
+            future.cancel(false); // Skips the task if it has not started
+        });
+
+        future.whenComplete((nothing, e) -> complete(rslt, e, request));
+
+        return rslt;
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    /**
+     * Runs the filter chain (on a thread of the {@link ExtensionUriExecutor}).  Once the request has
+     * timed out, the container may recycle the request and response objects, so the chain is not
+     * started (or continued to the center) after that.
+     */
+    private CompletionStage<Void> invokeFilters(String fname, DeferredResult<?> deferredResult,
+            HttpServletRequest request, HttpServletResponse response) {
+        if (deferredResult.isSetOrExpired()) {
+            throw new CancellationException("The request for extension URI '" + fname + "' has timed out");
+        }
+        final ExtensionUriEntity entity = filterChainBuilder.fromSupplier(
+                new ExtensionFilterChainMetadata(fname, ExtensionUriEntity.class),
+                request,
+                response,
+                () -> {
+                    if (deferredResult.isSetOrExpired()) {
+                        throw new CancellationException("The request for extension URI '" + fname + "' has timed out");
                     }
-            ).get();
-        } catch (ExtensionFilterChainAbortException fcae) {
-            return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body(UpdateStatus.failure(messageServices.getMessages(request)));
+                    logger.debug("Invoking extension URI '{}'", request.getRequestURI());
+                    return new ExtensionUriEntity();
+                }
+        ).get();
+        return entity != null
+                ? entity.whenDeferredComplete()
+                : CompletableFuture.completedFuture(null);
+    }
+
+    private void complete(DeferredResult<ResponseEntity<UpdateStatus>> rslt, Throwable e,
+            HttpServletRequest request) {
+
+        if (rslt.isSetOrExpired()) {
+            return; // Timed out;  the request may already have been recycled
         }
 
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(UpdateStatus.success(messageServices.getMessages(request)));
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null
+                ? e.getCause()
+                : e;
+
+        if (cause == null) {
+            rslt.setResult(ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(UpdateStatus.success(messageServices.getMessages(request))));
+        } else if (cause instanceof ExtensionFilterChainAbortException) {
+            rslt.setResult(ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(UpdateStatus.failure(messageServices.getMessages(request))));
+        } else if (cause instanceof ExtensionFilterUnavailableException) {
+            final ExtensionFilterUnavailableException efue = (ExtensionFilterUnavailableException) cause;
+            rslt.setResult(ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(efue.getRetryAfterSeconds()))
+                    .body(UpdateStatus.failure(efue.getMessage())));
+        } else {
+            // Let Spring MVC handle any other exception as it would have synchronously
+            rslt.setErrorResult(cause);
+        }
 
     }
 
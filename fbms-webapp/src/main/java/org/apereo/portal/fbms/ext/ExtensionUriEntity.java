@@ -1,9 +1,41 @@
 package org.apereo.portal.fbms.ext;
 
+import org.apereo.portal.fbms.data.ExtensionFilterChainAbortException;
 import org.apereo.portal.fbms.data.ExtensionFilterChainMetadata;
 import org.apereo.portal.fbms.data.FbmsEntity;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
- * Used with {@link ExtensionUriController} and {@link ExtensionFilterChainMetadata}
+ * Used with {@link ExtensionUriController} and {@link ExtensionFilterChainMetadata}.  Filters that
+ * perform slow work (e.g. calls to other systems) may start it asynchronously and register the
+ * resulting stage with {@link #defer(CompletionStage)};  the response is sent when every deferred
+ * stage has completed, without holding a thread in the meantime.
  */
-public class ExtensionUriEntity implements FbmsEntity {}
+public class ExtensionUriEntity implements FbmsEntity {
+
+    private final List<CompletableFuture<?>> deferred = new ArrayList<>();
+
+    /**
+     * Registers asynchronous work that must complete before the response is sent.  Complete the
+     * stage exceptionally with an {@link ExtensionFilterChainAbortException} to reject the request.
+     * Invoke from <code>doFilter</code> (i.e. on the thread running the filter chain).
+     */
+    public void defer(CompletionStage<?> stage) {
+        if (stage == null) {
+            throw new IllegalArgumentException("Argument 'stage' cannot be null");
+        }
+        deferred.add(stage.toCompletableFuture());
+    }
+
+    /**
+     * Completes when every deferred stage has completed;  exceptionally if any of them does.
+     */
+    /* package-private */ CompletableFuture<Void> whenDeferredComplete() {
+        return CompletableFuture.allOf(deferred.toArray(new CompletableFuture<?>[0]));
+    }
+
+}
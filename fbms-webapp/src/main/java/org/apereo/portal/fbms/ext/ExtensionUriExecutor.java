@@ -0,0 +1,208 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.ext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work of extension URIs on a bounded pool of threads dedicated to them, so that slow
+ * extension filters cannot occupy the request threads that serve the forms and submissions APIs.
+ * The number of requests in progress for each fname is limited as well, so that one slow extension
+ * URI cannot occupy the whole pool.
+ *
+ * <p>Rejections are counted by the <code>fbms.ext.rejected</code> metric, tagged with the reason
+ * (<code>queueFull</code> or <code>fnameLimit</code>).
+ */
+@Component
+public class ExtensionUriExecutor {
+
+    private static final String METRIC_NAME = "fbms.ext";
+
+    @Value("${org.apereo.portal.fbms.ext.threads:8}")
+    private int threads;
+
+    @Value("${org.apereo.portal.fbms.ext.queueCapacity:100}")
+    private int queueCapacity;
+
+    /**
+     * Requests in progress (queued, running, or awaiting deferred work) per fname.
+     */
+    @Value("${org.apereo.portal.fbms.ext.maxConcurrentPerFname:4}")
+    private int maxConcurrentPerFname;
+
+    @Value("${org.apereo.portal.fbms.ext.drainTimeoutSeconds:30}")
+    private long drainTimeoutSeconds;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Holds an entry only for fnames with requests in progress.
+     */
+    private final Map<String,Integer> inProgress = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PostConstruct
+    public void init() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "fbms-ext-" + threadNumber.incrementAndGet()));
+
+        if (meterRegistry != null) {
+            Gauge.builder(METRIC_NAME + ".queued", executor.getQueue(), BlockingQueue::size)
+                    .description("The number of extension URI requests waiting for a thread")
+                    .register(meterRegistry);
+            Gauge.builder(METRIC_NAME + ".active", executor, ThreadPoolExecutor::getActiveCount)
+                    .description("The number of extension URI requests running on a thread")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                logger.warn("Shutting down with {} extension URI request(s) not yet run",
+                        executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the task on the pool, with the <code>SecurityContext</code> of the calling thread.  The
+     * returned future completes when the stage the task returns completes (or when the task throws
+     * an exception).
+     *
+     * <p>Cancelling the returned future does not stop the task, nor does it release the capacity
+     * reserved for the fname:  that happens only when the task (including the stage it returns)
+     * finishes, so tasks that outlive their requests still count against the limit.  A task that
+     * has not started when the future is cancelled is skipped.
+     *
+     * @throws ExtensionUriRejectedException If the fname is at its limit or the queue is full
+     */
+    public <T> CompletableFuture<T> submit(String fname, Supplier<? extends CompletionStage<T>> task) {
+
+        if (!tryAcquire(fname)) {
+            count("fnameLimit");
+            throw new ExtensionUriRejectedException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many requests in progress for extension URI '" + fname + "'");
+        }
+
+        final CompletableFuture<T> rslt = new CompletableFuture<>();
+
+        final Runnable work = () -> {
+            if (rslt.isCancelled()) {
+                // Timed out while queued;  the request may already have been recycled
+                release(fname);
+                return;
+            }
+            final CompletionStage<T> stage;
+            try {
+                stage = task.get();
+            } catch (RuntimeException e) {
+                release(fname);
+                rslt.completeExceptionally(e);
+                return;
+            }
+            stage.whenComplete((value, e) -> {
+                release(fname);
+                if (e != null) {
+                    rslt.completeExceptionally(e);
+                } else {
+                    rslt.complete(value);
+                }
+            });
+        };
+
+        try {
+            executor.execute(DelegatingSecurityContextRunnable.create(work, SecurityContextHolder.getContext()));
+        } catch (RejectedExecutionException e) {
+            release(fname);
+            count("queueFull");
+            throw new ExtensionUriRejectedException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Extension URIs are not accepting requests at this time");
+        }
+
+        return rslt;
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private boolean tryAcquire(String fname) {
+        final boolean[] acquired = new boolean[1];
+        inProgress.compute(fname, (key, count) -> {
+            final int current = count != null ? count : 0;
+            if (current >= maxConcurrentPerFname) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void release(String fname) {
+        inProgress.computeIfPresent(fname, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void count(String reason) {
+        if (meterRegistry != null) {
+            Counter.builder(METRIC_NAME + ".rejected")
+                    .description("Extension URI requests rejected")
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+}
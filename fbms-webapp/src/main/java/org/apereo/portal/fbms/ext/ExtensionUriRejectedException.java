@@ -0,0 +1,43 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.ext;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown by {@link ExtensionUriExecutor} when it cannot accept a request.  Clients should retry
+ * later.
+ */
+public class ExtensionUriRejectedException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public ExtensionUriRejectedException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * The status of the response to the rejected request.
+     */
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apereo.portal.fbms.data.ExtensionFilter;
+import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.LatestFormCache;
+import org.apereo.portal.fbms.data.filter.RoleBasedSchemaTrimmingExtensionFilter;
+import org.apereo.portal.fbms.util.FnameValidator;
+import org.apereo.portal.fbms.util.UserServices;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifies that each representation of a form has an ETag of its own:  the compressed and
+ * uncompressed bytes of a form, and the variants that filters produce for different users.
+ */
+public class FormsConditionalRequestTests {
+
+    private static final String SHARED_FNAME = "shared-form";
+    private static final String TRIMMED_FNAME = "trimmed-form";
+    private static final String ADMINISTRATORS = "Portal Administrators";
+    private static final String SCHEMA = "{\"properties\":{\"visible\":{},\"secret\":{}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FormsRestController controller;
+
+    private UserServices userServices = mock(UserServices.class);
+
+    @Before
+    public void setUp() throws Exception {
+        final RoleBasedSchemaTrimmingExtensionFilter filter = new RoleBasedSchemaTrimmingExtensionFilter(
+                TRIMMED_FNAME,
+                Collections.singletonList(ADMINISTRATORS),
+                Collections.singletonMap("/properties", Collections.singletonList("secret")),
+                true); // Remove the secret unless the user is an administrator
+        set(RoleBasedSchemaTrimmingExtensionFilter.class, filter, "userServices", userServices);
+        when(userServices.getUsername(any())).thenReturn("someone");
+
+        final ExtensionFilterChainBuilder filterChainBuilder = new ExtensionFilterChainBuilder();
+        filterChainBuilder.setFilters(Collections.<ExtensionFilter>singletonList(filter));
+        filterChainBuilder.init();
+
+        final SerializedFormCache serializedFormCache = new SerializedFormCache();
+        set(SerializedFormCache.class, serializedFormCache, "enabled", true);
+        set(SerializedFormCache.class, serializedFormCache, "gzip", true);
+        set(SerializedFormCache.class, serializedFormCache, "maximumWeight", 1000000L);
+        serializedFormCache.init();
+
+        final LatestFormCache latestFormCache = mock(LatestFormCache.class);
+        when(latestFormCache.getLatestVersion(any())).thenReturn(1);
+        when(latestFormCache.getLatest(SHARED_FNAME)).thenReturn(form(SHARED_FNAME));
+        when(latestFormCache.getLatest(TRIMMED_FNAME)).thenReturn(form(TRIMMED_FNAME));
+
+        controller = new FormsRestController();
+        set(FormsRestController.class, controller, "fnameValidator", new FnameValidator());
+        set(FormsRestController.class, controller, "endStateFormEntity", form("end-state"));
+        set(FormsRestController.class, controller, "latestFormCache", latestFormCache);
+        set(FormsRestController.class, controller, "serializedFormCache", serializedFormCache);
+        set(FormsRestController.class, controller, "filterChainBuilder", filterChainBuilder);
+        set(FormsRestController.class, controller, "transactionManager", mock(PlatformTransactionManager.class));
+        controller.init();
+    }
+
+    @Test
+    public void contentCodingsHaveDifferentEtagsTest() {
+        final ResponseEntity identity = get(SHARED_FNAME, false, null);
+        assertEquals(HttpStatus.OK, identity.getStatusCode());
+        assertEquals("\"shared-form-v1\"", identity.getHeaders().getETag());
+
+        final ResponseEntity gzip = get(SHARED_FNAME, true, null);
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"shared-form-v1-gzip\"", gzip.getHeaders().getETag());
+
+        // A client holding the uncompressed bytes does not receive 304 for the compressed ones
+        assertEquals(HttpStatus.OK, get(SHARED_FNAME, true, identity.getHeaders().getETag()).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, get(SHARED_FNAME, true, gzip.getHeaders().getETag()).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                get(SHARED_FNAME, false, identity.getHeaders().getETag()).getStatusCode());
+    }
+
+    @Test
+    public void filteredVariantsHaveDifferentEtagsTest() {
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Students"));
+        final ResponseEntity trimmed = get(TRIMMED_FNAME, false, null);
+        final String trimmedEtag = trimmed.getHeaders().getETag();
+        assertTrue(trimmedEtag.startsWith("W/"));
+        assertTrue(trimmed.getHeaders().getVary().contains(HttpHeaders.AUTHORIZATION));
+
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton(ADMINISTRATORS));
+        final ResponseEntity complete = get(TRIMMED_FNAME, false, null);
+        assertNotEquals(trimmedEtag, complete.getHeaders().getETag());
+
+        // The administrator does not receive 304 for the trimmed variant...
+        assertEquals(HttpStatus.OK, get(TRIMMED_FNAME, false, trimmedEtag).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                get(TRIMMED_FNAME, false, complete.getHeaders().getETag()).getStatusCode());
+
+        // ...but the student does
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Students"));
+        assertEquals(HttpStatus.NOT_MODIFIED, get(TRIMMED_FNAME, false, trimmedEtag).getStatusCode());
+    }
+
+    /*
+     * Implementation
+     */
+
+    private ResponseEntity get(String fname, boolean acceptGzip, String ifNoneMatch) {
+        final MockHttpServletRequest request =
+                new MockHttpServletRequest("GET", FormsRestController.API_ROOT + "/" + fname);
+        if (acceptGzip) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return controller.getFormByFname(fname, request, new MockHttpServletResponse());
+    }
+
+    private FormEntity form(String fname) throws Exception {
+        final FormIdentifier id = new FormIdentifier();
+        id.setFname(fname);
+        id.setVersion(1);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id);
+        rslt.setSchema(objectMapper.readTree(SCHEMA));
+        return rslt;
+    }
+
+    private static void set(Class<?> clazz, Object target, String name, Object value) throws Exception {
+        final Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apereo.portal.fbms.data.ExtensionFilter;
+import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
+import org.apereo.portal.fbms.data.FormEntity;
+import org.apereo.portal.fbms.data.FormIdentifier;
+import org.apereo.portal.fbms.data.FormRepository;
+import org.apereo.portal.fbms.data.filter.RoleBasedSchemaTrimmingExtensionFilter;
+import org.apereo.portal.fbms.util.UserServices;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifies that listing complete forms (<code>include=schema</code>) reveals no more of each form
+ * than requesting it individually:  forms pass through the extension filters.
+ */
+public class FormsListingFilterTests {
+
+    private static final String TRIMMED_FNAME = "trimmed-form";
+    private static final String OTHER_FNAME = "other-form";
+    private static final String SCHEMA = "{\"properties\":{\"visible\":{},\"secret\":{}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FormsRestController controller;
+
+    private FormRepository formRepository = mock(FormRepository.class);
+
+    private UserServices userServices = mock(UserServices.class);
+
+    @Before
+    public void setUp() throws Exception {
+        final RoleBasedSchemaTrimmingExtensionFilter filter = new RoleBasedSchemaTrimmingExtensionFilter(
+                TRIMMED_FNAME,
+                Collections.singletonList("Portal Administrators"),
+                Collections.singletonMap("/properties", Collections.singletonList("secret")),
+                true); // Remove the secret unless the user is an administrator
+        set(RoleBasedSchemaTrimmingExtensionFilter.class, filter, "userServices", userServices);
+
+        final ExtensionFilterChainBuilder filterChainBuilder = new ExtensionFilterChainBuilder();
+        filterChainBuilder.setFilters(Collections.<ExtensionFilter>singletonList(filter));
+        filterChainBuilder.init();
+
+        controller = new FormsRestController();
+        set(FormsRestController.class, controller, "formRepository", formRepository);
+        set(FormsRestController.class, controller, "filterChainBuilder", filterChainBuilder);
+        set(FormsRestController.class, controller, "serializedFormCache", mock(SerializedFormCache.class));
+        set(FormsRestController.class, controller, "transactionManager", mock(PlatformTransactionManager.class));
+        set(FormsRestController.class, controller, "entityManager", mock(EntityManager.class));
+        controller.init();
+
+        when(userServices.getUsername(any())).thenReturn("student");
+        when(formRepository.streamCurrentAfter(""))
+                .thenAnswer(invocation -> Stream.of(form(OTHER_FNAME), form(TRIMMED_FNAME)));
+    }
+
+    @Test
+    public void nonAdministratorReceivesTrimmedSchemasTest() throws Exception {
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Students"));
+        final JsonNode forms = listForms();
+        assertEquals(2, forms.size());
+        assertTrue(schemaOf(forms, OTHER_FNAME).path("properties").has("secret"));
+        assertFalse(schemaOf(forms, TRIMMED_FNAME).path("properties").has("secret"));
+        assertTrue(schemaOf(forms, TRIMMED_FNAME).path("properties").has("visible"));
+    }
+
+    @Test
+    public void administratorReceivesCompleteSchemasTest() throws Exception {
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Portal Administrators"));
+        final JsonNode forms = listForms();
+        assertTrue(schemaOf(forms, TRIMMED_FNAME).path("properties").has("secret"));
+    }
+
+    /*
+     * Implementation
+     */
+
+    private JsonNode listForms() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", FormsRestController.API_ROOT);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.listForms("", 0, "schema", request, response);
+        assertEquals(200, response.getStatus());
+        return objectMapper.readTree(response.getContentAsString());
+    }
+
+    private static JsonNode schemaOf(JsonNode forms, String fname) {
+        for (JsonNode form : forms) {
+            if (fname.equals(form.path("fname").asText())) {
+                return form.path("schema");
+            }
+        }
+        throw new AssertionError("Form not listed:  " + fname);
+    }
+
+    private FormEntity form(String fname) throws Exception {
+        final FormIdentifier id = new FormIdentifier();
+        id.setFname(fname);
+        id.setVersion(1);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id);
+        rslt.setSchema(objectMapper.readTree(SCHEMA));
+        return rslt;
+    }
+
+    private static void set(Class<?> clazz, Object target, String name, Object value) throws Exception {
+        final Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+}
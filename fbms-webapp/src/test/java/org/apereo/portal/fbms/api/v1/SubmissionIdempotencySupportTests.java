@@ -0,0 +1,175 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import org.apereo.portal.fbms.data.filter.FormForwardingExtensionFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link SubmissionIdempotencySupport} processes each submission once per
+ * <code>Idempotency-Key</code>, and that repeats receive the original response.
+ */
+public class SubmissionIdempotencySupportTests {
+
+    private static final String USERNAME = "student";
+    private static final String FNAME = "test-form";
+    private static final Long TIMESTAMP = 1000L;
+    private static final String FORWARD = "{\"fname\":\"next-form\"}";
+
+    private SubmissionIdempotencySupport support;
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    @Before
+    public void setUp() throws Exception {
+        support = new SubmissionIdempotencySupport();
+        set("maximumSize", 1L);
+        set("timeToLiveSeconds", 3600L);
+        set("waitTimeoutSeconds", 5L);
+        support.init();
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void noKeyTest() {
+        execute(null, TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        execute(null, TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void replayIncludesServletHeadersTest() {
+        final MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        final ResponseEntity<UpdateStatus> first = execute("key", TIMESTAMP, firstResponse, () -> {
+            // As the FormForwardingExtensionFilter does
+            firstResponse.setHeader(FormForwardingExtensionFilter.FORM_FORWARD_HEADER_NAME, FORWARD);
+            return accepted();
+        });
+        assertNull(first.getHeaders().getFirst(SubmissionIdempotencySupport.IDEMPOTENT_REPLAYED_HEADER));
+
+        final ResponseEntity<UpdateStatus> repeat =
+                execute("key", TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        assertEquals(1, invocations.get());
+        assertEquals(first.getStatusCode(), repeat.getStatusCode());
+        assertEquals(first.getBody(), repeat.getBody());
+        assertEquals(FORWARD, repeat.getHeaders().getFirst(FormForwardingExtensionFilter.FORM_FORWARD_HEADER_NAME));
+        assertEquals("true", repeat.getHeaders().getFirst(SubmissionIdempotencySupport.IDEMPOTENT_REPLAYED_HEADER));
+    }
+
+    @Test
+    public void keyReusedForDifferentSubmissionTest() {
+        execute("key", TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        final ResponseEntity<UpdateStatus> other =
+                execute("key", TIMESTAMP + 1, new MockHttpServletResponse(), this::accepted);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void serverErrorIsNotRememberedTest() {
+        execute("key", TIMESTAMP, new MockHttpServletResponse(), () -> {
+            invocations.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(UpdateStatus.failure("Busy"));
+        });
+        final ResponseEntity<UpdateStatus> retry =
+                execute("key", TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void attemptInProgressIsNotEvictedTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<ResponseEntity<UpdateStatus>> first = executorService.submit(() ->
+                execute("slow", TIMESTAMP, new MockHttpServletResponse(), () -> {
+                    started.countDown();
+                    await(release);
+                    return accepted();
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Completed attempts for other keys exceed maximumSize
+        execute("other1", TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        execute("other2", TIMESTAMP, new MockHttpServletResponse(), this::accepted);
+        assertEquals(3, invocations.get());
+
+        // The repeat waits for the first request instead of being processed again
+        final Future<ResponseEntity<UpdateStatus>> repeat = executorService.submit(() ->
+                execute("slow", TIMESTAMP, new MockHttpServletResponse(), this::accepted));
+        release.countDown();
+        assertEquals(HttpStatus.OK, first.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals("true", repeat.get(5, TimeUnit.SECONDS).getHeaders()
+                .getFirst(SubmissionIdempotencySupport.IDEMPOTENT_REPLAYED_HEADER));
+        assertEquals(3, invocations.get());
+    }
+
+    /*
+     * Implementation
+     */
+
+    private ResponseEntity<UpdateStatus> execute(String idempotencyKey, Long timestamp,
+            MockHttpServletResponse response, Supplier<ResponseEntity<UpdateStatus>> operation) {
+        return support.execute(USERNAME, FNAME, idempotencyKey, timestamp, response, operation);
+    }
+
+    private ResponseEntity<UpdateStatus> accepted() {
+        invocations.incrementAndGet();
+        return ResponseEntity.status(HttpStatus.OK).body(UpdateStatus.success("Accepted"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void set(String name, Object value) throws Exception {
+        final Field field = SubmissionIdempotencySupport.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(support, value);
+    }
+
+}
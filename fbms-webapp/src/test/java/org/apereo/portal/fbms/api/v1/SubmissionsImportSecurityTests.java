@@ -0,0 +1,138 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.api.v1;
+
+import org.apereo.portal.fbms.data.ExtensionFilterChainBuilder;
+import org.apereo.portal.fbms.data.FormVersionRegistry;
+import org.apereo.portal.fbms.data.LatestSubmissionCache;
+import org.apereo.portal.fbms.data.SubmissionRepository;
+import org.apereo.portal.fbms.data.SubmissionWriter;
+import org.apereo.portal.fbms.util.FnameValidator;
+import org.apereo.portal.fbms.util.MessageServices;
+import org.apereo.portal.fbms.util.UserServices;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifies that only privileged users may import submissions, whichever form of the import URI
+ * they use.
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(SubmissionsRestController.class)
+public class SubmissionsImportSecurityTests {
+
+    private static final String IMPORT_AUTHORITY = "Portal Administrators";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private FormVersionRegistry formVersionRegistry;
+
+    @MockBean
+    private SubmissionRepository submissionRepository;
+
+    @MockBean
+    private LatestSubmissionCache latestSubmissionCache;
+
+    @MockBean
+    private SubmissionWriter submissionWriter;
+
+    @MockBean
+    private SubmissionImportSupport submissionImportSupport;
+
+    @MockBean
+    private SubmissionIdempotencySupport submissionIdempotencySupport;
+
+    @MockBean
+    private ExtensionFilterChainBuilder filterChainBuilder;
+
+    @MockBean
+    private FnameValidator fnameValidator;
+
+    @MockBean
+    private UserServices userServices;
+
+    @MockBean
+    private MessageServices messageServices;
+
+    @Before
+    public void setUp() {
+        when(userServices.getUsername(any())).thenReturn("student");
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton("Students"));
+    }
+
+    @Test
+    public void importRequiresAuthorityTest() throws Exception {
+        mockMvc.perform(importRequest("/api/v1/submissions").with(user("student")))
+                .andExpect(status().isForbidden());
+        verify(submissionImportSupport, never()).importSubmissions(any(), any());
+    }
+
+    @Test
+    public void importWithTrailingSlashRequiresAuthorityTest() throws Exception {
+        mockMvc.perform(importRequest("/api/v1/submissions/").with(user("student")))
+                .andExpect(status().isForbidden());
+        verify(submissionImportSupport, never()).importSubmissions(any(), any());
+    }
+
+    @Test
+    public void importWithAuthorityTest() throws Exception {
+        when(userServices.getUsername(any())).thenReturn("admin");
+        when(userServices.getGroups(any())).thenReturn(Collections.singleton(IMPORT_AUTHORITY));
+        mockMvc.perform(importRequest("/api/v1/submissions/")
+                .with(user("admin").authorities(new SimpleGrantedAuthority(IMPORT_AUTHORITY))))
+                .andExpect(status().isOk());
+        verify(submissionImportSupport).importSubmissions(any(), any());
+    }
+
+    @Test
+    public void controllerChecksAuthorityTest() throws Exception {
+        // Passes the URI rule, but UserServices reports that the user lacks the authority
+        mockMvc.perform(importRequest("/api/v1/submissions")
+                .with(user("admin").authorities(new SimpleGrantedAuthority(IMPORT_AUTHORITY))))
+                .andExpect(status().isForbidden());
+        verify(submissionImportSupport, never()).importSubmissions(any(), any());
+    }
+
+    private MockHttpServletRequestBuilder importRequest(String uri) {
+        return post(uri)
+                .contentType(SubmissionImportSupport.NDJSON_MEDIA_TYPE)
+                .content("{}\n");
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.data;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers a single form with concurrent updates to verify that {@link FormRepository#save} is a
+ * compare-and-set operation:  every version is written exactly once, and no successful update is
+ * overwritten by another.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(JsonContentStore.class)
+@TestPropertySource(properties = "hibernate.dialect=org.hibernate.dialect.HSQLDialect")
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Each save needs its own transaction
+public class FormRepositoryConcurrencyTests {
+
+    private static final int THREADS = 8;
+
+    private static final int ATTEMPTS_PER_THREAD = 25;
+
+    @Autowired
+    private FormRepository formRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void concurrentUpdatesAreNeverLost() throws Exception {
+
+        final String fname = "concurrent-updates";
+        formRepository.save(newForm(fname, 1, "setup"));
+
+        final Map<Integer,String> winners = new ConcurrentHashMap<>();
+        final AtomicInteger conflicts = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final String writer = "writer-" + i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+                    final int nextVersion = formRepository.findLatestVersionByFname(fname) + 1;
+                    try {
+                        formRepository.save(newForm(fname, nextVersion, writer));
+                        assertNull("Version " + nextVersion + " was saved twice",
+                                winners.putIfAbsent(nextVersion, writer));
+                    } catch (FormVersionConflictException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Every attempt either succeeded or failed fast with a conflict
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, winners.size() + conflicts.get());
+        assertTrue("At least one update should succeed", winners.size() > 0);
+
+        // The head moved forward exactly once per successful update
+        assertEquals(Integer.valueOf(winners.size() + 1), formRepository.findLatestVersionByFname(fname));
+
+        // Each version holds the content of the writer that was told it succeeded
+        for (Map.Entry<Integer,String> winner : winners.entrySet()) {
+            final FormEntity stored = formRepository.findById(id(fname, winner.getKey())).orElse(null);
+            assertEquals(winner.getValue(), stored.getMetadata().get("writer").asText());
+        }
+
+    }
+
+    @Test(expected = FormVersionConflictException.class)
+    public void creatingAnExistingFormConflicts() {
+        final String fname = "duplicate-create";
+        formRepository.save(newForm(fname, 1, "first"));
+        formRepository.save(newForm(fname, 1, "second"));
+    }
+
+    @Test(expected = FormVersionConflictException.class)
+    public void skippingAVersionConflicts() {
+        final String fname = "skipped-version";
+        formRepository.save(newForm(fname, 1, "first"));
+        formRepository.save(newForm(fname, 3, "second"));
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() {
+
+        final String fname = "deduplicated";
+        for (int version = 1; version <= 5; version++) {
+            formRepository.save(newForm(fname, version, "same"));
+        }
+        formRepository.save(newForm("deduplicated-copy", 1, "same"));
+
+        // All six versions refer to the same stored metadata
+        final List<String> metadataColumns = jdbcTemplate.queryForList(
+                "SELECT FORM_METADATA FROM FBMS_FORM WHERE FORM_FNAME IN (?, ?)",
+                String.class, fname, "deduplicated-copy");
+        assertEquals(6, metadataColumns.size());
+        assertEquals(1, new HashSet<>(metadataColumns).size());
+        assertTrue(JsonContentStore.isReference(metadataColumns.get(0)));
+
+        final FormEntity stored = formRepository.findById(id(fname, 5)).orElse(null);
+        assertEquals("same", stored.getMetadata().get("writer").asText());
+
+    }
+
+    /*
+     * Implementation
+     */
+
+    private static FormIdentifier id(String fname, int version) {
+        final FormIdentifier rslt = new FormIdentifier();
+        rslt.setFname(fname);
+        rslt.setVersion(version);
+        return rslt;
+    }
+
+    private static FormEntity newForm(String fname, int version, String writer) {
+        final ObjectNode metadata = JsonNodeFactory.instance.objectNode();
+        metadata.put("writer", writer);
+        final FormEntity rslt = new FormEntity();
+        rslt.setId(id(fname, version));
+        rslt.setSchema(JsonNodeFactory.instance.objectNode());
+        rslt.setMetadata(metadata);
+        return rslt;
+    }
+
+}
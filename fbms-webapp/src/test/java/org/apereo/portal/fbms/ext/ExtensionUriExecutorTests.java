@@ -0,0 +1,187 @@
+/*
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apereo.portal.fbms.ext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the limits the {@link ExtensionUriExecutor} places on extension URI requests, and that the
+ * capacity reserved for an fname is held until the work actually finishes.
+ */
+public class ExtensionUriExecutorTests {
+
+    private static final String FNAME = "test-ext";
+
+    private ExtensionUriExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new ExtensionUriExecutor();
+        set("threads", 1);
+        set("queueCapacity", 2);
+        set("maxConcurrentPerFname", 1);
+        set("drainTimeoutSeconds", 5L);
+        executor.init();
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        executor.destroy();
+    }
+
+    @Test
+    public void fnameLimitTest() throws Exception {
+        final CompletableFuture<Void> work = new CompletableFuture<>();
+        final CompletableFuture<Void> first = executor.submit(FNAME, () -> work);
+
+        assertRejected(HttpStatus.TOO_MANY_REQUESTS, FNAME);
+
+        work.complete(null);
+        first.get(5, TimeUnit.SECONDS);
+        executor.submit(FNAME, () -> CompletableFuture.completedFuture(null)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void cancelHoldsCapacityUntilWorkFinishesTest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<Void> work = new CompletableFuture<>();
+        final CompletableFuture<Void> first = executor.submit(FNAME, () -> {
+            started.countDown();
+            return work;
+        });
+        await(started);
+        first.cancel(false); // As on a timeout
+
+        // The work is still running, so the fname is still at its limit
+        assertRejected(HttpStatus.TOO_MANY_REQUESTS, FNAME);
+
+        work.complete(null);
+        executor.submit(FNAME, () -> CompletableFuture.completedFuture(null)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void cancelledQueuedTaskIsSkippedTest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.submit("blocker", () -> {
+            await(release);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        final AtomicBoolean invoked = new AtomicBoolean();
+        final CompletableFuture<Void> queued = executor.submit(FNAME, () -> {
+            invoked.set(true);
+            return CompletableFuture.completedFuture(null);
+        });
+        final CompletableFuture<Void> after =
+                executor.submit("after", () -> CompletableFuture.completedFuture(null));
+        queued.cancel(false);
+        release.countDown();
+
+        // Once the skipped task has been dequeued, its capacity is released
+        after.get(5, TimeUnit.SECONDS);
+        executor.submit(FNAME, () -> CompletableFuture.completedFuture(null)).get(5, TimeUnit.SECONDS);
+        assertFalse(invoked.get());
+    }
+
+    @Test
+    public void queueFullTest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.submit("running", () -> {
+            await(release);
+            return CompletableFuture.completedFuture(null);
+        });
+        final CompletableFuture<Void> queued1 =
+                executor.submit("queued1", () -> CompletableFuture.completedFuture(null));
+        final CompletableFuture<Void> queued2 =
+                executor.submit("queued2", () -> CompletableFuture.completedFuture(null));
+
+        assertRejected(HttpStatus.SERVICE_UNAVAILABLE, "rejected");
+        release.countDown();
+        queued1.get(5, TimeUnit.SECONDS);
+        queued2.get(5, TimeUnit.SECONDS);
+
+        // The rejected request did not keep the capacity it reserved for its fname
+        executor.submit("rejected", () -> CompletableFuture.completedFuture(null)).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void securityContextIsPropagatedTest() throws Exception {
+        final Authentication authentication = new TestingAuthenticationToken("student", null);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        final Authentication seen = executor.submit(FNAME, () ->
+                CompletableFuture.completedFuture(SecurityContextHolder.getContext().getAuthentication())
+        ).get(5, TimeUnit.SECONDS);
+        assertSame(authentication, seen);
+
+        // The pool thread does not keep the context afterwards
+        SecurityContextHolder.clearContext();
+        final Authentication later = executor.submit(FNAME, () ->
+                CompletableFuture.completedFuture(SecurityContextHolder.getContext().getAuthentication())
+        ).get(5, TimeUnit.SECONDS);
+        assertEquals(null, later);
+    }
+
+    /*
+     * Implementation
+     */
+
+    private void assertRejected(HttpStatus status, String fname) {
+        try {
+            executor.submit(fname, () -> CompletableFuture.completedFuture(null));
+            fail("Expected the request to be rejected with " + status);
+        } catch (ExtensionUriRejectedException eure) {
+            assertEquals(status, eure.getStatus());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void set(String name, Object value) throws Exception {
+        final Field field = ExtensionUriExecutor.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(executor, value);
+    }
+
+}